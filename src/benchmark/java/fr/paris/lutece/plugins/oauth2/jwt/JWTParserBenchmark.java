@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fr.paris.lutece.plugins.oauth2.business.AuthClientConf;
+import fr.paris.lutece.plugins.oauth2.business.AuthServerConf;
+import fr.paris.lutece.plugins.oauth2.business.Token;
+import fr.paris.lutece.plugins.oauth2.service.AsyncExecutorService;
+import fr.paris.lutece.plugins.oauth2.web.Constants;
+import fr.paris.lutece.util.httpaccess.HttpAccess;
+import fr.paris.lutece.util.httpaccess.HttpAccessService;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Jwks;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * Compares the JWTParser implementations. The JWKS is served from memory, so that only the parsing and the validation are measured.
+ * <ul>
+ * <li>warm : the parser is reused, so the keys and the verifiers are already built</li>
+ * <li>cold : a new parser is used for each validation, so the JWKS is parsed and the keys are converted each time</li>
+ * </ul>
+ * The jjwt parser rejects the unsigned tokens (alg none), so for this algorithm it measures the cost of the rejection. Run with :
+ * 
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=JWTParserBenchmark
+ * </pre>
+ * 
+ * The allocation rate per operation is reported by the gc profiler (gc.alloc.rate.norm).
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class JWTParserBenchmark
+{
+    private static final String SECRET = "7504f9f0ef08473a4c26873e9c1b898e567a39e6b76b7e60e93a0cb25cae5eb8";
+    private static final String CLIENT_ID = "895fae591ccae777094931e269e46447";
+    private static final String ISSUER = "https://idp.example.com";
+    private static final String JWKS_URI = "https://idp.example.com/jwks";
+    private static final String NONCE = "12344354597459";
+    private static final String KID_RSA = "rsa-1";
+    private static final String KID_EC = "ec-1";
+    private static final String ALG_NONE = "none";
+
+    private static final Logger _logger = Logger.getLogger( Constants.LOGGER_OAUTH2 );
+
+    @Param( {
+            "jjwt", "mitre"
+    } )
+    public String _strParser;
+
+    @Param( {
+            "HS256", "HS512", "RS256", "ES256", ALG_NONE
+    } )
+    public String _strAlg;
+
+    private String _strJwt;
+    private String _strJwks;
+    private AuthClientConf _clientConfig;
+    private AuthServerConf _serverConfig;
+    private JWTParser _parser;
+
+    @Setup
+    public void setUp( ) throws Exception
+    {
+        // the JWKS fetches run on the async executor, which is created from the Lutece properties by default
+        AsyncExecutorService.setExecutor( Executors.newSingleThreadExecutor( runnable -> {
+            Thread thread = new Thread( runnable );
+            thread.setDaemon( true );
+            return thread;
+        } ) );
+
+        KeyPair rsaKeyPair = Jwts.SIG.RS256.keyPair( ).build( );
+        KeyPair ecKeyPair = Jwts.SIG.ES256.keyPair( ).build( );
+
+        Map<String, Object> mapJwks = new HashMap<>( );
+        mapJwks.put( "keys", List.of( Jwks.builder( ).key( (RSAPublicKey) rsaKeyPair.getPublic( ) ).id( KID_RSA ).build( ),
+                Jwks.builder( ).key( (ECPublicKey) ecKeyPair.getPublic( ) ).id( KID_EC ).build( ) ) );
+        _strJwks = new ObjectMapper( ).writeValueAsString( mapJwks );
+
+        JwtBuilder builder = Jwts.builder( ).claims( buildClaims( ) );
+        switch( _strAlg )
+        {
+            case "HS256":
+                builder.signWith( Keys.hmacShaKeyFor( SECRET.getBytes( StandardCharsets.UTF_8 ) ), Jwts.SIG.HS256 );
+                break;
+            case "HS512":
+                builder.signWith( Keys.hmacShaKeyFor( SECRET.getBytes( StandardCharsets.UTF_8 ) ), Jwts.SIG.HS512 );
+                break;
+            case "RS256":
+                builder.header( ).keyId( KID_RSA ).and( ).signWith( rsaKeyPair.getPrivate( ), Jwts.SIG.RS256 );
+                break;
+            case "ES256":
+                builder.header( ).keyId( KID_EC ).and( ).signWith( ecKeyPair.getPrivate( ), Jwts.SIG.ES256 );
+                break;
+            default:
+                break;
+        }
+        _strJwt = builder.compact( );
+
+        _clientConfig = new AuthClientConf( );
+        _clientConfig.setClientId( CLIENT_ID );
+        _clientConfig.setClientSecret( SECRET );
+
+        _serverConfig = new AuthServerConf( );
+        _serverConfig.setIssuer( ISSUER );
+        _serverConfig.setEnableJwtParser( true );
+        if ( !ALG_NONE.equals( _strAlg ) )
+        {
+            _serverConfig.setIDTokenSignatureAlgorithmNames( Set.of( _strAlg ) );
+        }
+        if ( _strAlg.startsWith( "RS" ) || _strAlg.startsWith( "ES" ) )
+        {
+            _serverConfig.setJwksEndpointUri( JWKS_URI );
+        }
+
+        _parser = newParser( );
+    }
+
+    /**
+     * Parser with new key caches, for the cold benchmarks
+     */
+    @State( Scope.Thread )
+    public static class ColdParser
+    {
+        private JWTParser _parser;
+
+        @Setup( Level.Invocation )
+        public void setUp( JWTParserBenchmark benchmark )
+        {
+            _parser = benchmark.newParser( );
+        }
+    }
+
+    @Benchmark
+    public Object parseTokenWarm( )
+    {
+        return parseToken( _parser );
+    }
+
+    @Benchmark
+    public Object parseStringWarm( )
+    {
+        return parseString( _parser );
+    }
+
+    @Benchmark
+    public Object parseTokenCold( ColdParser coldParser )
+    {
+        return parseToken( coldParser._parser );
+    }
+
+    @Benchmark
+    public Object parseStringCold( ColdParser coldParser )
+    {
+        return parseString( coldParser._parser );
+    }
+
+    private Object parseToken( JWTParser parser )
+    {
+        Token token = new Token( );
+        token.setIdTokenString( _strJwt );
+        try
+        {
+            parser.parseJWT( token, _clientConfig, _serverConfig, NONCE, _logger );
+            return token.getIdToken( );
+        }
+        catch( TokenValidationException e )
+        {
+            return e;
+        }
+    }
+
+    private Object parseString( JWTParser parser )
+    {
+        try
+        {
+            return parser.parseJWT( _strJwt, _clientConfig, _serverConfig, _logger );
+        }
+        catch( TokenValidationException e )
+        {
+            return e;
+        }
+    }
+
+    /**
+     * Creates a parser of the benchmarked implementation, which reads the JWKS from memory
+     * 
+     * @return the parser
+     */
+    JWTParser newParser( )
+    {
+        HttpAccess httpAccess = new HttpAccess( (HttpAccessService) null )
+        {
+            @Override
+            public String doGet( String strUrl )
+            {
+                return _strJwks;
+            }
+        };
+        return "mitre".equals( _strParser ) ? new MitreJWTParser( httpAccess ) : new JjwtJWTParser( httpAccess );
+    }
+
+    private static Map<String, Object> buildClaims( )
+    {
+        long lNow = System.currentTimeMillis( );
+        Map<String, Object> mapClaims = new HashMap<>( );
+        mapClaims.put( Constants.CLAIM_NONCE, NONCE );
+        mapClaims.put( Constants.CLAIM_IDP, "idp" );
+        mapClaims.put( Constants.CLAIM_ACR, "eidas1" );
+        mapClaims.put( "exp", new Date( lNow + 3600000L ) );
+        mapClaims.put( "iat", new Date( lNow ) );
+        mapClaims.put( "sub", "subject" );
+        mapClaims.put( "aud", CLIENT_ID );
+        mapClaims.put( "iss", ISSUER );
+        return mapClaims;
+    }
+}
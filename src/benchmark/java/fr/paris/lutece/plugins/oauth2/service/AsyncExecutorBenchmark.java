@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Compares the execution modes of the {@link AsyncExecutorService} with a burst of concurrent blocking calls to a local mock
+ * authorization server answering its token endpoint after a fixed latency. The score is the time needed to complete the whole
+ * burst. The virtual mode falls back to platform threads on a JVM without virtual threads. Run with :
+ * 
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=AsyncExecutorBenchmark
+ * </pre>
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2, time = 5 )
+@Measurement( iterations = 3, time = 5 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class AsyncExecutorBenchmark
+{
+    private static final String TOKEN_PATH = "/token";
+    private static final String TOKEN_RESPONSE = "{\"access_token\":\"2YotnFZFEjr1zMsicMWpAA\",\"token_type\":\"Bearer\",\"expires_in\":3600}";
+    private static final int POOL_SIZE = 20;
+
+    @Param( {
+            AsyncExecutorService.MODE_PLATFORM, AsyncExecutorService.MODE_VIRTUAL
+    } )
+    public String _strMode;
+
+    @Param( {
+            "100", "1000"
+    } )
+    public int _nConcurrentCalls;
+
+    @Param( {
+            "100"
+    } )
+    public int _nLatency;
+
+    private HttpServer _server;
+    private ExecutorService _serverExecutor;
+    private ExecutorService _executor;
+    private URL _tokenEndpoint;
+
+    @Setup
+    public void setUp( ) throws IOException
+    {
+        _serverExecutor = Executors.newCachedThreadPool( );
+        _server = HttpServer.create( new InetSocketAddress( "localhost", 0 ), _nConcurrentCalls );
+        _server.createContext( TOKEN_PATH, exchange -> {
+            try ( InputStream in = exchange.getRequestBody( ) )
+            {
+                in.readAllBytes( );
+                Thread.sleep( _nLatency );
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread( ).interrupt( );
+            }
+            byte [ ] response = TOKEN_RESPONSE.getBytes( StandardCharsets.UTF_8 );
+            exchange.getResponseHeaders( ).set( "Content-Type", "application/json" );
+            exchange.sendResponseHeaders( HttpURLConnection.HTTP_OK, response.length );
+            try ( OutputStream out = exchange.getResponseBody( ) )
+            {
+                out.write( response );
+            }
+        } );
+        _server.setExecutor( _serverExecutor );
+        _server.start( );
+        _tokenEndpoint = new URL( "http://localhost:" + _server.getAddress( ).getPort( ) + TOKEN_PATH );
+
+        _executor = AsyncExecutorService.createExecutor( _strMode, POOL_SIZE, _nConcurrentCalls );
+    }
+
+    @TearDown
+    public void tearDown( )
+    {
+        _executor.shutdownNow( );
+        _server.stop( 0 );
+        _serverExecutor.shutdownNow( );
+    }
+
+    @Benchmark
+    public int burst( )
+    {
+        List<CompletableFuture<String>> listCalls = new ArrayList<>( _nConcurrentCalls );
+        for ( int i = 0; i < _nConcurrentCalls; i++ )
+        {
+            listCalls.add( CompletableFuture.supplyAsync( this::callTokenEndpoint, _executor ) );
+        }
+        int nLength = 0;
+        for ( CompletableFuture<String> call : listCalls )
+        {
+            nLength += call.join( ).length( );
+        }
+        return nLength;
+    }
+
+    /**
+     * Blocking call to the token endpoint of the mock server
+     * 
+     * @return the response
+     */
+    private String callTokenEndpoint( )
+    {
+        try
+        {
+            HttpURLConnection connection = (HttpURLConnection) _tokenEndpoint.openConnection( );
+            connection.setRequestMethod( "POST" );
+            connection.setDoOutput( true );
+            try ( OutputStream out = connection.getOutputStream( ) )
+            {
+                out.write( "grant_type=authorization_code&code=SplxlOBeZQQYbYS6WxSbIA".getBytes( StandardCharsets.UTF_8 ) );
+            }
+            try ( InputStream in = connection.getInputStream( ) )
+            {
+                return new String( in.readAllBytes( ), StandardCharsets.UTF_8 );
+            }
+        }
+        catch( IOException e )
+        {
+            throw new UncheckedIOException( e );
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.service;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.paris.lutece.plugins.oauth2.dataclient.DataClient;
+import fr.paris.lutece.plugins.oauth2.dataclient.LogUserInfoDataClient;
+import fr.paris.lutece.plugins.oauth2.web.Constants;
+
+/**
+ * Measures the resolution of the data client of a request by {@link DataClientService#getClient(HttpServletRequest)} with many
+ * concurrent threads, either by the data_client parameter or by falling back to the default client, with and without the
+ * sessionless mode. Run with :
+ * 
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=DataClientServiceBenchmark
+ * </pre>
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@Threads( 32 )
+@State( Scope.Benchmark )
+public class DataClientServiceBenchmark
+{
+    private static final int CLIENT_COUNT = 20;
+
+    @Param( {
+            "named", "default"
+    } )
+    public String _strResolution;
+
+    @Param( {
+            "false", "true"
+    } )
+    public boolean _bSessionless;
+
+    private HttpServletRequest _request;
+
+    @Setup
+    public void setUp( )
+    {
+        List<DataClient> listClients = new ArrayList<>( );
+        for ( int i = 0; i < CLIENT_COUNT; i++ )
+        {
+            LogUserInfoDataClient client = new LogUserInfoDataClient( );
+            client.setName( "client" + i );
+            client.setDefault( i == CLIENT_COUNT - 1 );
+            listClients.add( client );
+        }
+        DataClientService.instance( ).setClients( listClients, _bSessionless );
+
+        String strDataClient = "named".equals( _strResolution ) ? "client" + ( CLIENT_COUNT / 2 ) : null;
+        HttpSession session = (HttpSession) Proxy.newProxyInstance( getClass( ).getClassLoader( ), new Class<?> [ ] {
+                HttpSession.class
+        }, ( proxy, method, args ) -> null );
+        _request = (HttpServletRequest) Proxy.newProxyInstance( getClass( ).getClassLoader( ), new Class<?> [ ] {
+                HttpServletRequest.class
+        }, ( proxy, method, args ) -> {
+            switch( method.getName( ) )
+            {
+                case "getParameter":
+                    return Constants.PARAMETER_DATA_CLIENT.equals( args [0] ) ? strDataClient : null;
+                case "getSession":
+                    return session;
+                default:
+                    return null;
+            }
+        } );
+    }
+
+    @Benchmark
+    public DataClient getClient( )
+    {
+        return DataClientService.instance( ).getClient( _request );
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.web;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fr.paris.lutece.plugins.oauth2.business.AuthClientConf;
+import fr.paris.lutece.plugins.oauth2.business.AuthServerConf;
+import fr.paris.lutece.plugins.oauth2.jwt.JWTParser;
+import fr.paris.lutece.plugins.oauth2.jwt.JjwtJWTParser;
+import fr.paris.lutece.plugins.oauth2.jwt.MitreJWTParser;
+import fr.paris.lutece.plugins.oauth2.service.AsyncExecutorService;
+import fr.paris.lutece.util.httpaccess.HttpAccess;
+import fr.paris.lutece.util.httpaccess.HttpAccessService;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Jwks;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * Measures the number of requests validated per second by the {@link BearerTokenFilter} on a single thread, that is per core.
+ * The JWKS is served from memory and fetched once, so that the score covers the signature verification with the cached keys
+ * and the claim checks. Run with :
+ * 
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=BearerTokenFilterBenchmark
+ * </pre>
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@Threads( 1 )
+@State( Scope.Benchmark )
+public class BearerTokenFilterBenchmark
+{
+    private static final String SECRET = "7504f9f0ef08473a4c26873e9c1b898e567a39e6b76b7e60e93a0cb25cae5eb8";
+    private static final String CLIENT_ID = "895fae591ccae777094931e269e46447";
+    private static final String ISSUER = "https://idp.example.com";
+    private static final String JWKS_URI = "https://idp.example.com/jwks";
+    private static final String AUDIENCE = "lutece-api";
+    private static final String KID_RSA = "rsa-1";
+    private static final String KID_EC = "ec-1";
+
+    @Param( {
+            "jjwt", "mitre"
+    } )
+    public String _strParser;
+
+    @Param( {
+            "HS256", "RS256", "ES256"
+    } )
+    public String _strAlg;
+
+    private BearerTokenFilter _filter;
+    private HttpServletRequest _request;
+    private HttpServletResponse _response;
+    private final int [ ] _nStatus = new int [ 1];
+    private final FilterChain _chain = ( request, response ) -> _nStatus [0] = HttpServletResponse.SC_OK;
+
+    @Setup
+    public void setUp( ) throws Exception
+    {
+        AsyncExecutorService.setExecutor( Executors.newSingleThreadExecutor( runnable -> {
+            Thread thread = new Thread( runnable );
+            thread.setDaemon( true );
+            return thread;
+        } ) );
+
+        KeyPair rsaKeyPair = Jwts.SIG.RS256.keyPair( ).build( );
+        KeyPair ecKeyPair = Jwts.SIG.ES256.keyPair( ).build( );
+
+        Map<String, Object> mapJwks = new HashMap<>( );
+        mapJwks.put( "keys", List.of( Jwks.builder( ).key( (RSAPublicKey) rsaKeyPair.getPublic( ) ).id( KID_RSA ).build( ),
+                Jwks.builder( ).key( (ECPublicKey) ecKeyPair.getPublic( ) ).id( KID_EC ).build( ) ) );
+        String strJwks = new ObjectMapper( ).writeValueAsString( mapJwks );
+
+        long lNow = System.currentTimeMillis( );
+        JwtBuilder builder = Jwts.builder( ).issuer( ISSUER ).subject( "subject" ).audience( ).add( AUDIENCE ).and( )
+                .issuedAt( new Date( lNow ) ).expiration( new Date( lNow + 3600000L ) );
+        switch( _strAlg )
+        {
+            case "HS256":
+                builder.signWith( Keys.hmacShaKeyFor( SECRET.getBytes( StandardCharsets.UTF_8 ) ), Jwts.SIG.HS256 );
+                break;
+            case "RS256":
+                builder.header( ).keyId( KID_RSA ).and( ).signWith( rsaKeyPair.getPrivate( ), Jwts.SIG.RS256 );
+                break;
+            default:
+                builder.header( ).keyId( KID_EC ).and( ).signWith( ecKeyPair.getPrivate( ), Jwts.SIG.ES256 );
+                break;
+        }
+        String strAuthorization = "Bearer " + builder.compact( );
+
+        AuthClientConf clientConfig = new AuthClientConf( );
+        clientConfig.setClientId( CLIENT_ID );
+        clientConfig.setClientSecret( SECRET );
+
+        AuthServerConf serverConfig = new AuthServerConf( );
+        serverConfig.setIssuer( ISSUER );
+        serverConfig.setEnableJwtParser( true );
+        serverConfig.setIDTokenSignatureAlgorithmNames( Set.of( _strAlg ) );
+        if ( !_strAlg.startsWith( "HS" ) )
+        {
+            serverConfig.setJwksEndpointUri( JWKS_URI );
+        }
+
+        HttpAccess httpAccess = new HttpAccess( (HttpAccessService) null )
+        {
+            @Override
+            public String doGet( String strUrl )
+            {
+                return strJwks;
+            }
+        };
+        JWTParser parser = "mitre".equals( _strParser ) ? new MitreJWTParser( httpAccess ) : new JjwtJWTParser( httpAccess );
+        _filter = new BearerTokenFilter( parser, serverConfig, clientConfig, AUDIENCE, "lutece" );
+
+        _request = (HttpServletRequest) Proxy.newProxyInstance( getClass( ).getClassLoader( ), new Class<?> [ ] {
+                HttpServletRequest.class
+        }, ( proxy, method, args ) -> "getHeader".equals( method.getName( ) ) ? strAuthorization : null );
+        _response = (HttpServletResponse) Proxy.newProxyInstance( getClass( ).getClassLoader( ), new Class<?> [ ] {
+                HttpServletResponse.class
+        }, ( proxy, method, args ) -> {
+            if ( "sendError".equals( method.getName( ) ) )
+            {
+                _nStatus [0] = (Integer) args [0];
+            }
+            return null;
+        } );
+
+        validatedRequest( );
+        if ( _nStatus [0] != HttpServletResponse.SC_OK )
+        {
+            throw new IllegalStateException( "The access token is rejected by the filter" );
+        }
+    }
+
+    @Benchmark
+    public int validatedRequest( ) throws Exception
+    {
+        _filter.doFilter( _request, _response, _chain );
+        return _nStatus [0];
+    }
+}
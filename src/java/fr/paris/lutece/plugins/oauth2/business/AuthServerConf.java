@@ -50,6 +50,7 @@ public class AuthServerConf implements Serializable
     private boolean _bEnableJwtParser;
     private Set<String> _idTokenSignatureAlgorithmNames;
     private String _strJwksEndpointUri;
+    private String _strIntrospectionEndpointUri;
 
     /**
      * 
@@ -221,4 +222,27 @@ public class AuthServerConf implements Serializable
     {
         this._strJwksEndpointUri = strJwksEndpointUri;
     }
+
+    /**
+     * Gets the token introspection endpoint URI. If not <code>null</code>, the tokens are validated by this endpoint
+     * 
+     * @return the token introspection endpoint URI
+     * @since 2.0.1
+     */
+    public String getIntrospectionEndpointUri( )
+    {
+        return _strIntrospectionEndpointUri;
+    }
+
+    /**
+     * Sets the token introspection endpoint URI. If not <code>null</code>, the tokens are validated by this endpoint
+     * 
+     * @param strIntrospectionEndpointUri
+     *            the token introspection endpoint URI
+     * @since 2.0.1
+     */
+    public void setIntrospectionEndpointUri( String strIntrospectionEndpointUri )
+    {
+        this._strIntrospectionEndpointUri = strIntrospectionEndpointUri;
+    }
 }
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.business;
+
+import java.io.Serializable;
+
+/**
+ * FlowState : values of an authorization flow that must be kept between the authorization request and the callback
+ * 
+ * @since 2.0.1
+ */
+public class FlowState implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private String _strState;
+    private String _strNonce;
+    private String _strCodeVerifier;
+    private String _strDataClientName;
+    private String _strHandlerName;
+    private String _strBinding;
+    private long _lCreationTime;
+
+    /**
+     * @return the state
+     */
+    public String getState( )
+    {
+        return _strState;
+    }
+
+    /**
+     * @param strState
+     *            the state to set
+     */
+    public void setState( String strState )
+    {
+        _strState = strState;
+    }
+
+    /**
+     * @return the nonce
+     */
+    public String getNonce( )
+    {
+        return _strNonce;
+    }
+
+    /**
+     * @param strNonce
+     *            the nonce to set
+     */
+    public void setNonce( String strNonce )
+    {
+        _strNonce = strNonce;
+    }
+
+    /**
+     * @return the PKCE code verifier
+     */
+    public String getCodeVerifier( )
+    {
+        return _strCodeVerifier;
+    }
+
+    /**
+     * @param strCodeVerifier
+     *            the PKCE code verifier to set
+     */
+    public void setCodeVerifier( String strCodeVerifier )
+    {
+        _strCodeVerifier = strCodeVerifier;
+    }
+
+    /**
+     * @return the data client name
+     */
+    public String getDataClientName( )
+    {
+        return _strDataClientName;
+    }
+
+    /**
+     * @param strDataClientName
+     *            the data client name to set
+     */
+    public void setDataClientName( String strDataClientName )
+    {
+        _strDataClientName = strDataClientName;
+    }
+
+    /**
+     * @return the callback handler name
+     */
+    public String getHandlerName( )
+    {
+        return _strHandlerName;
+    }
+
+    /**
+     * @param strHandlerName
+     *            the callback handler name to set
+     */
+    public void setHandlerName( String strHandlerName )
+    {
+        _strHandlerName = strHandlerName;
+    }
+
+    /**
+     * @return the digest of the value binding the flow to the browser, or null
+     */
+    public String getBinding( )
+    {
+        return _strBinding;
+    }
+
+    /**
+     * @param strBinding
+     *            the digest of the value binding the flow to the browser
+     */
+    public void setBinding( String strBinding )
+    {
+        _strBinding = strBinding;
+    }
+
+    /**
+     * @return the creation time of the flow, in milliseconds since the epoch
+     */
+    public long getCreationTime( )
+    {
+        return _lCreationTime;
+    }
+
+    /**
+     * @param lCreationTime
+     *            the creation time of the flow, in milliseconds since the epoch
+     */
+    public void setCreationTime( long lCreationTime )
+    {
+        _lCreationTime = lCreationTime;
+    }
+}
@@ -33,6 +33,7 @@
  */
 package fr.paris.lutece.plugins.oauth2.business;
 
+import java.util.HashSet;
 import java.util.Set;
 
 /**
@@ -217,6 +218,26 @@ public class IDToken
         _strAcr = strAcr;
     }
 
+    /**
+     * Copy the ID token, so that a cached ID token is never shared between callers
+     * 
+     * @return the copy
+     * @since 2.0.1
+     */
+    public IDToken copy( )
+    {
+        IDToken copy = new IDToken( );
+        copy.setAudience( getAudience( ) == null ? null : new HashSet<>( getAudience( ) ) );
+        copy.setExpiration( getExpiration( ) );
+        copy.setIssueAt( getIssueAt( ) );
+        copy.setIssuer( getIssuer( ) );
+        copy.setSubject( getSubject( ) );
+        copy.setIdProvider( getIdProvider( ) );
+        copy.setNonce( getNonce( ) );
+        copy.setAcr( getAcr( ) );
+        return copy;
+    }
+
     /**
      * {@inheritDoc }
      */
@@ -34,13 +34,28 @@
 package fr.paris.lutece.plugins.oauth2.business;
 
 import java.io.IOException;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import fr.paris.lutece.plugins.oauth2.service.CachingHttpAccessService;
+import fr.paris.lutece.plugins.oauth2.service.RefreshSchedulerService;
+import fr.paris.lutece.plugins.oauth2.web.Constants;
 import fr.paris.lutece.portal.service.util.AppException;
 import fr.paris.lutece.util.httpaccess.HttpAccess;
 import fr.paris.lutece.util.httpaccess.HttpAccessException;
@@ -56,9 +71,27 @@ public class OIDCAuthServerConf extends AuthServerConf
 {
     private static final long serialVersionUID = 3459341547945895738L;
     private static final String WELLKNOWN_PATH = ".well-known/openid-configuration";
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final Pattern PATTERN_MAX_AGE = Pattern.compile( "max-age\\s*=\\s*\"?(\\d+)" );
+    private static final long DEFAULT_DISCOVERY_CACHE_TTL = 3600L;
+    private static final long MIN_DISCOVERY_REFRESH_DELAY = 30L;
+    private static final int REFRESH_RATIO_PERCENT = 90;
+    private static final long DEFAULT_DISCOVERY_MAX_STALENESS = 86400L;
+    private static final long RETRY_INITIAL_DELAY = 5L;
+    private static final long RETRY_MAX_DELAY = 600L;
+    private static final int RETRY_MAX_SHIFT = 16;
+
+    private static Logger _logger = Logger.getLogger( Constants.LOGGER_OAUTH2 );
 
     private final HttpAccess _httpAccess;
     private final ObjectMapper _mapper;
+    private final transient AtomicReference<DiscoverySnapshot> _discovery = new AtomicReference<>( );
+    private final transient AtomicReference<ScheduledFuture<?>> _refreshTask = new AtomicReference<>( );
+    private final transient AtomicBoolean _bRefreshing = new AtomicBoolean( );
+    private final transient AtomicInteger _nRefreshFailures = new AtomicInteger( );
+    private final transient AtomicReference<CompletableFuture<DiscoverySnapshot>> _pendingLoad = new AtomicReference<>( );
+    private long _lDiscoveryCacheTtl = DEFAULT_DISCOVERY_CACHE_TTL;
+    private long _lDiscoveryMaxStaleness = DEFAULT_DISCOVERY_MAX_STALENESS;
 
     public OIDCAuthServerConf( )
     {
@@ -68,6 +101,78 @@ public class OIDCAuthServerConf extends AuthServerConf
         this._mapper.configure( DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false );
     }
 
+    /**
+     * Gets the time to live of the discovery document, in seconds. This value is used when the authorization server does not provide a Cache-Control
+     * max-age directive.
+     * 
+     * @return the time to live of the discovery document, in seconds
+     * @since 2.0.1
+     */
+    public long getDiscoveryCacheTtl( )
+    {
+        return _lDiscoveryCacheTtl;
+    }
+
+    /**
+     * Sets the time to live of the discovery document, in seconds. This value is used when the authorization server does not provide a Cache-Control
+     * max-age directive.
+     * 
+     * @param lDiscoveryCacheTtl
+     *            the time to live of the discovery document, in seconds
+     * @since 2.0.1
+     */
+    public void setDiscoveryCacheTtl( long lDiscoveryCacheTtl )
+    {
+        _lDiscoveryCacheTtl = lDiscoveryCacheTtl;
+    }
+
+    /**
+     * Gets the maximum time, in seconds, during which an expired discovery document is still used while it can't be refreshed
+     * 
+     * @return the maximum staleness of the discovery document, in seconds
+     * @since 2.0.1
+     */
+    public long getDiscoveryMaxStaleness( )
+    {
+        return _lDiscoveryMaxStaleness;
+    }
+
+    /**
+     * Sets the maximum time, in seconds, during which an expired discovery document is still used while it can't be refreshed. Use 0 to never use an
+     * expired discovery document.
+     * 
+     * @param lDiscoveryMaxStaleness
+     *            the maximum staleness of the discovery document, in seconds
+     * @since 2.0.1
+     */
+    public void setDiscoveryMaxStaleness( long lDiscoveryMaxStaleness )
+    {
+        _lDiscoveryMaxStaleness = lDiscoveryMaxStaleness;
+    }
+
+    /**
+     * Gets the time, in seconds, since the discovery document currently used has expired
+     * 
+     * @return the staleness of the discovery document in seconds, or 0 if it is not expired
+     * @since 2.0.1
+     */
+    public long getDiscoveryStaleness( )
+    {
+        DiscoverySnapshot snapshot = _discovery.get( );
+        return snapshot == null ? 0L : snapshot.getStaleness( ) / 1000L;
+    }
+
+    /**
+     * Gets the number of consecutive failures of the background refresh of the discovery document
+     * 
+     * @return the number of consecutive refresh failures
+     * @since 2.0.1
+     */
+    public int getDiscoveryRefreshFailures( )
+    {
+        return _nRefreshFailures.get( );
+    }
+
     @Override
     public boolean isEnableJwtParser( )
     {
@@ -101,7 +206,7 @@ public class OIDCAuthServerConf extends AuthServerConf
         {
             return super.getIDTokenSignatureAlgorithmNames( );
         }
-        return Set.of( getOpenidConfiguration( ).getIDTokenSigningAlgValuesSupported( ) );
+        return getDiscoverySnapshot( ).getIDTokenSignatureAlgorithmNames( );
     }
 
     @Override
@@ -124,9 +229,114 @@ public class OIDCAuthServerConf extends AuthServerConf
         return getOpenidConfiguration( ).getEndSessionEndpoint( );
     }
 
+    @Override
+    public String getIntrospectionEndpointUri( )
+    {
+        if ( super.getIntrospectionEndpointUri( ) != null )
+        {
+            return super.getIntrospectionEndpointUri( );
+        }
+        return getOpenidConfiguration( ).getIntrospectionEndpoint( );
+    }
+
     private OpenIDConfiguration getOpenidConfiguration( )
+    {
+        return getDiscoverySnapshot( ).getConfiguration( );
+    }
+
+    /**
+     * Get the current discovery snapshot. The discovery document is only fetched synchronously on the first access, or if the background refresh did not
+     * succeed during the maximum staleness window. Otherwise an expired snapshot is served while the background refresh is retried.
+     * Concurrent callers share the same fetch, which is made without holding any monitor.
+     * 
+     * @return the discovery snapshot
+     */
+    private DiscoverySnapshot getDiscoverySnapshot( )
     {
         String issuer = getIssuer( );
+        DiscoverySnapshot snapshot = _discovery.get( );
+        if ( snapshot != null && snapshot.isUsableFor( issuer, _lDiscoveryMaxStaleness ) )
+        {
+            return snapshot;
+        }
+        return waitFor( load( issuer, false ) );
+    }
+
+    /**
+     * Load the discovery document, or join the load in progress
+     * 
+     * @param issuer
+     *            the issuer
+     * @param bForce
+     *            true to load the document even if the current snapshot is still usable
+     * @return the load shared by the callers
+     */
+    private CompletableFuture<DiscoverySnapshot> load( String issuer, boolean bForce )
+    {
+        CompletableFuture<DiscoverySnapshot> future = new CompletableFuture<>( );
+        CompletableFuture<DiscoverySnapshot> pendingLoad = _pendingLoad.compareAndExchange( null, future );
+        if ( pendingLoad != null )
+        {
+            return pendingLoad;
+        }
+        try
+        {
+            // another caller may have loaded the document in the meantime
+            DiscoverySnapshot snapshot = _discovery.get( );
+            if ( bForce || snapshot == null || !snapshot.isUsableFor( issuer, _lDiscoveryMaxStaleness ) )
+            {
+                snapshot = loadDiscoverySnapshot( issuer );
+            }
+            future.complete( snapshot );
+        }
+        catch( RuntimeException e )
+        {
+            future.completeExceptionally( e );
+        }
+        finally
+        {
+            _pendingLoad.set( null );
+        }
+        return future;
+    }
+
+    /**
+     * Wait for the load of the discovery document
+     * 
+     * @param load
+     *            the load
+     * @return the snapshot
+     */
+    private DiscoverySnapshot waitFor( CompletableFuture<DiscoverySnapshot> load )
+    {
+        try
+        {
+            return load.get( );
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+            throw new AppException( "Interrupted while loading the OpenID configuration of " + getIssuer( ), e );
+        }
+        catch( ExecutionException e )
+        {
+            if ( e.getCause( ) instanceof RuntimeException )
+            {
+                throw (RuntimeException) e.getCause( );
+            }
+            throw new AppException( e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Fetch the discovery document, store it and schedule its refresh
+     * 
+     * @param issuer
+     *            the issuer
+     * @return the new snapshot
+     */
+    private DiscoverySnapshot loadDiscoverySnapshot( String issuer )
+    {
         Objects.requireNonNull( issuer, "issuer must not be null" );
         if ( !issuer.startsWith( "https" ) )
         {
@@ -143,14 +353,158 @@ public class OIDCAuthServerConf extends AuthServerConf
         }
         try
         {
-            String strConfiguration = _httpAccess.doGet( strConfURL );
+            Map<String, String> mapResponseHeaders = new ConcurrentHashMap<>( );
+            String strConfiguration = _httpAccess.doGet( strConfURL, null, null, null, mapResponseHeaders );
             OpenIDConfiguration res = this._mapper.readValue( strConfiguration, OpenIDConfiguration.class );
             res.validate( issuer );
-            return res;
+
+            long lTtl = getTimeToLive( mapResponseHeaders );
+            DiscoverySnapshot snapshot = new DiscoverySnapshot( issuer, res, System.currentTimeMillis( ) + lTtl * 1000L );
+            _discovery.set( snapshot );
+            scheduleRefresh( lTtl );
+            _logger.debug( "OpenID configuration of " + issuer + " loaded, time to live : " + lTtl + "s" );
+            return snapshot;
         }
         catch( HttpAccessException | IOException e )
         {
             throw new AppException( e.getMessage( ), e );
         }
     }
+
+    /**
+     * Refresh the discovery document in background. On failure, the last loaded document is kept and the refresh is retried with an exponential backoff.
+     */
+    private void refreshDiscoverySnapshot( )
+    {
+        if ( !_bRefreshing.compareAndSet( false, true ) )
+        {
+            return;
+        }
+        try
+        {
+            waitFor( load( getIssuer( ), true ) );
+            _nRefreshFailures.set( 0 );
+        }
+        catch( RuntimeException e )
+        {
+            int nFailures = _nRefreshFailures.incrementAndGet( );
+            long lRetryDelay = Math.min( RETRY_INITIAL_DELAY << Math.min( nFailures - 1, RETRY_MAX_SHIFT ), RETRY_MAX_DELAY );
+            _logger.error( "Unable to refresh the OpenID configuration of " + getIssuer( ) + " (attempt " + nFailures + ", stale since "
+                    + getDiscoveryStaleness( ) + "s, next attempt in " + lRetryDelay + "s) : " + e.getMessage( ), e );
+            scheduleTask( lRetryDelay );
+        }
+        finally
+        {
+            _bRefreshing.set( false );
+        }
+    }
+
+    /**
+     * Schedule the refresh of the discovery document before its expiration
+     * 
+     * @param lTtl
+     *            the time to live of the current snapshot, in seconds
+     */
+    private void scheduleRefresh( long lTtl )
+    {
+        scheduleTask( Math.max( lTtl * REFRESH_RATIO_PERCENT / 100, MIN_DISCOVERY_REFRESH_DELAY ) );
+    }
+
+    /**
+     * Schedule the background refresh task, replacing the previously scheduled one
+     * 
+     * @param lDelay
+     *            the delay before the refresh, in seconds
+     */
+    private void scheduleTask( long lDelay )
+    {
+        ScheduledFuture<?> previousTask = _refreshTask.getAndSet( RefreshSchedulerService.schedule( this::refreshDiscoverySnapshot, lDelay, TimeUnit.SECONDS ) );
+        if ( previousTask != null )
+        {
+            previousTask.cancel( false );
+        }
+    }
+
+    /**
+     * Get the time to live of the discovery document, using the Cache-Control max-age directive if provided by the server
+     * 
+     * @param mapResponseHeaders
+     *            the response headers
+     * @return the time to live, in seconds
+     */
+    private long getTimeToLive( Map<String, String> mapResponseHeaders )
+    {
+        for ( Map.Entry<String, String> header : mapResponseHeaders.entrySet( ) )
+        {
+            if ( HEADER_CACHE_CONTROL.equalsIgnoreCase( header.getKey( ) ) && header.getValue( ) != null )
+            {
+                Matcher matcher = PATTERN_MAX_AGE.matcher( header.getValue( ) );
+                if ( matcher.find( ) )
+                {
+                    try
+                    {
+                        return Math.max( Long.parseLong( matcher.group( 1 ) ), MIN_DISCOVERY_REFRESH_DELAY );
+                    }
+                    catch( NumberFormatException e )
+                    {
+                        _logger.debug( "Invalid max-age directive : " + header.getValue( ) );
+                    }
+                }
+            }
+        }
+        return _lDiscoveryCacheTtl;
+    }
+
+    /**
+     * Parsed and validated discovery document
+     */
+    private static final class DiscoverySnapshot
+    {
+        private final String _strIssuer;
+        private final OpenIDConfiguration _configuration;
+        private final Set<String> _idTokenSignatureAlgorithmNames;
+        private final long _lExpirationTime;
+
+        DiscoverySnapshot( String strIssuer, OpenIDConfiguration configuration, long lExpirationTime )
+        {
+            _strIssuer = strIssuer;
+            _configuration = configuration;
+            _idTokenSignatureAlgorithmNames = Set.of( configuration.getIDTokenSigningAlgValuesSupported( ) );
+            _lExpirationTime = lExpirationTime;
+        }
+
+        OpenIDConfiguration getConfiguration( )
+        {
+            return _configuration;
+        }
+
+        Set<String> getIDTokenSignatureAlgorithmNames( )
+        {
+            return _idTokenSignatureAlgorithmNames;
+        }
+
+        /**
+         * Tells if the snapshot can be used for the issuer
+         * 
+         * @param strIssuer
+         *            the issuer
+         * @param lMaxStaleness
+         *            the maximum staleness allowed, in seconds
+         * @return <code>true</code> if the snapshot has been loaded for this issuer and is not expired for more than the max staleness
+         */
+        boolean isUsableFor( String strIssuer, long lMaxStaleness )
+        {
+            return _strIssuer.equals( strIssuer ) && getStaleness( ) <= lMaxStaleness * 1000L;
+        }
+
+        /**
+         * Gets the time since the expiration of the snapshot
+         * 
+         * @return the time since the expiration in milliseconds, or 0 if the snapshot is not expired
+         */
+        long getStaleness( )
+        {
+            return Math.max( System.currentTimeMillis( ) - _lExpirationTime, 0L );
+        }
+    }
 }
@@ -87,6 +87,7 @@ public class OpenIDConfiguration
     private String _opPolicyURI;
     private String _opTOSURI;
     private String _strEndSessionEndpoint;
+    private String _strIntrospectionEndpoint;
 
     public String getIssuer( )
     {
@@ -484,6 +485,17 @@ public class OpenIDConfiguration
         this._strEndSessionEndpoint = strEndSessionEndpoint;
     }
 
+    public String getIntrospectionEndpoint( )
+    {
+        return _strIntrospectionEndpoint;
+    }
+
+    @JsonProperty( "introspection_endpoint" )
+    public void setIntrospectionEndpoint( String strIntrospectionEndpoint )
+    {
+        this._strIntrospectionEndpoint = strIntrospectionEndpoint;
+    }
+
     /**
      * Validate the configuration.
      * 
@@ -224,6 +224,24 @@ public class Token
         return _creationTime.plusSeconds( _nExpiresIn ).isBefore( Instant.now( ) );
     }
 
+    /**
+     * Copy the token, so that a shared token is never modified by one of its callers
+     * 
+     * @return the copy, with the same creation time
+     * @since 2.0.1
+     */
+    public Token copy( )
+    {
+        Token copy = new Token( _creationTime );
+        copy.setAccessToken( _strAccessToken );
+        copy.setTokenType( _strTokenType );
+        copy.setExpiresIn( _nExpiresIn );
+        copy.setIdTokenString( _strIdToken );
+        copy.setIdToken( ( _idToken != null ) ? _idToken.copy( ) : null );
+        copy.setRefreshToken( _strRefreshToken );
+        return copy;
+    }
+
     /**
      * {@inheritDoc }
      */
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.business;
+
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * TokenIntrospection : response of a token introspection endpoint
+ * 
+ * @see https://www.rfc-editor.org/rfc/rfc7662
+ * @since 2.0.1
+ */
+public class TokenIntrospection
+{
+    @JsonProperty( "active" )
+    private boolean _bActive;
+
+    @JsonProperty( "scope" )
+    private String _strScope;
+
+    @JsonProperty( "client_id" )
+    private String _strClientId;
+
+    @JsonProperty( "token_type" )
+    private String _strTokenType;
+
+    @JsonProperty( "exp" )
+    private Long _lExpiration;
+
+    @JsonProperty( "sub" )
+    private String _strSubject;
+
+    @JsonProperty( "iss" )
+    private String _strIssuer;
+
+    @JsonProperty( "aud" )
+    @JsonFormat( with = JsonFormat.Feature.ACCEPT_SINGLE_VALUE_AS_ARRAY )
+    private Set<String> _audience;
+
+    /**
+     * Is the token active
+     * 
+     * @return true if the token is active
+     */
+    public boolean isActive( )
+    {
+        return _bActive;
+    }
+
+    /**
+     * Sets the active flag
+     * 
+     * @param bActive
+     *            true if the token is active
+     */
+    public void setActive( boolean bActive )
+    {
+        _bActive = bActive;
+    }
+
+    /**
+     * Returns the Scope
+     * 
+     * @return The Scope
+     */
+    public String getScope( )
+    {
+        return _strScope;
+    }
+
+    /**
+     * Sets the Scope
+     * 
+     * @param strScope
+     *            The Scope
+     */
+    public void setScope( String strScope )
+    {
+        _strScope = strScope;
+    }
+
+    /**
+     * Returns the ClientId
+     * 
+     * @return The ClientId
+     */
+    public String getClientId( )
+    {
+        return _strClientId;
+    }
+
+    /**
+     * Sets the ClientId
+     * 
+     * @param strClientId
+     *            The ClientId
+     */
+    public void setClientId( String strClientId )
+    {
+        _strClientId = strClientId;
+    }
+
+    /**
+     * Returns the TokenType
+     * 
+     * @return The TokenType
+     */
+    public String getTokenType( )
+    {
+        return _strTokenType;
+    }
+
+    /**
+     * Sets the TokenType
+     * 
+     * @param strTokenType
+     *            The TokenType
+     */
+    public void setTokenType( String strTokenType )
+    {
+        _strTokenType = strTokenType;
+    }
+
+    /**
+     * Returns the Expiration
+     * 
+     * @return The Expiration in seconds since the epoch, or null if the server didn't provide it
+     */
+    public Long getExpiration( )
+    {
+        return _lExpiration;
+    }
+
+    /**
+     * Sets the Expiration
+     * 
+     * @param lExpiration
+     *            The Expiration in seconds since the epoch
+     */
+    public void setExpiration( Long lExpiration )
+    {
+        _lExpiration = lExpiration;
+    }
+
+    /**
+     * Returns the Subject
+     * 
+     * @return The Subject
+     */
+    public String getSubject( )
+    {
+        return _strSubject;
+    }
+
+    /**
+     * Sets the Subject
+     * 
+     * @param strSubject
+     *            The Subject
+     */
+    public void setSubject( String strSubject )
+    {
+        _strSubject = strSubject;
+    }
+
+    /**
+     * Returns the Issuer
+     * 
+     * @return The Issuer
+     */
+    public String getIssuer( )
+    {
+        return _strIssuer;
+    }
+
+    /**
+     * Sets the Issuer
+     * 
+     * @param strIssuer
+     *            The Issuer
+     */
+    public void setIssuer( String strIssuer )
+    {
+        _strIssuer = strIssuer;
+    }
+
+    /**
+     * Returns the Audience
+     * 
+     * @return The Audience
+     */
+    public Set<String> getAudience( )
+    {
+        return _audience;
+    }
+
+    /**
+     * Sets the Audience
+     * 
+     * @param audience
+     *            The Audience
+     */
+    public void setAudience( Set<String> audience )
+    {
+        _audience = audience;
+    }
+}
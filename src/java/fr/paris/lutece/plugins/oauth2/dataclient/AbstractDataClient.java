@@ -34,6 +34,7 @@
 package fr.paris.lutece.plugins.oauth2.dataclient;
 
 import fr.paris.lutece.plugins.oauth2.business.Token;
+import fr.paris.lutece.plugins.oauth2.service.AsyncExecutorService;
 import fr.paris.lutece.plugins.oauth2.service.BearerTokenAuthenticator;
 import fr.paris.lutece.plugins.oauth2.web.Constants;
 import fr.paris.lutece.portal.service.util.AppPathService;
@@ -48,6 +49,7 @@ import org.apache.log4j.Logger;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -260,6 +262,20 @@ public abstract class AbstractDataClient implements DataClient
         return strResponse;
     }
 
+    /**
+     * Send asynchronously an authenticated request with the access token to retreive data. The request is run by the
+     * {@link AsyncExecutorService}.
+     * 
+     * @param token
+     *            The token
+     * @return The future response
+     * @since 2.0.1
+     */
+    public CompletableFuture<String> getDataAsync( Token token )
+    {
+        return AsyncExecutorService.supplyAsync( ( ) -> getData( token ) );
+    }
+
     public void handleError( HttpServletRequest request, HttpServletResponse response, String strError )
     {
         try
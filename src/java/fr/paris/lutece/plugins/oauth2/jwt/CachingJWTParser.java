@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.jwt;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Base64;
+
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fr.paris.lutece.plugins.oauth2.business.AuthClientConf;
+import fr.paris.lutece.plugins.oauth2.business.AuthServerConf;
+import fr.paris.lutece.plugins.oauth2.business.IDToken;
+import fr.paris.lutece.plugins.oauth2.business.Token;
+import fr.paris.lutece.plugins.oauth2.service.ExpiringCache;
+import fr.paris.lutece.plugins.oauth2.service.OauthUtils;
+import fr.paris.lutece.plugins.oauth2.web.Constants;
+
+/**
+ * JWTParser which keeps the result of the validation of a JWT until its expiration, so that validating the same JWT again doesn't verify its signature
+ * again. The nonce of an ID token is still checked on each call. The cache keeps its own copy of the ID tokens and each caller
+ * gets a fresh copy, so that a caller modifying its ID token doesn't affect the others.
+ * 
+ * @since 2.0.1
+ */
+public class CachingJWTParser implements JWTParser
+{
+    private static final int DEFAULT_MAX_SIZE = 1000;
+    private static final String CLAIM_EXPIRATION = "exp";
+
+    private static final ObjectMapper _mapper = new ObjectMapper( );
+    private static Logger _logger = Logger.getLogger( Constants.LOGGER_OAUTH2 );
+
+    private final JWTParser _parser;
+    private final ExpiringCache<String, IDToken> _idTokens;
+    private final ExpiringCache<String, String> _claims;
+
+    /**
+     * Constructor
+     * 
+     * @param parser
+     *            the parser used to validate the JWT which are not in cache
+     */
+    public CachingJWTParser( JWTParser parser )
+    {
+        this( parser, DEFAULT_MAX_SIZE );
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param parser
+     *            the parser used to validate the JWT which are not in cache
+     * @param nMaxSize
+     *            the maximum number of validated JWT kept in cache
+     */
+    public CachingJWTParser( JWTParser parser, int nMaxSize )
+    {
+        _parser = parser;
+        _idTokens = new ExpiringCache<>( nMaxSize );
+        _claims = new ExpiringCache<>( nMaxSize );
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void parseJWT( Token token, AuthClientConf clientConfig, AuthServerConf serverConfig, String strStoredNonce, Logger logger )
+            throws TokenValidationException
+    {
+        if ( token.getIdTokenString( ) == null )
+        {
+            _parser.parseJWT( token, clientConfig, serverConfig, strStoredNonce, logger );
+            return;
+        }
+        String strKey = getKey( token.getIdTokenString( ), clientConfig, serverConfig );
+        IDToken idToken = _idTokens.get( strKey );
+        if ( idToken != null )
+        {
+            if ( idToken.getNonce( ) == null || !idToken.getNonce( ).equals( strStoredNonce ) )
+            {
+                throw new TokenValidationException( "The nonce info has not the value expected." );
+            }
+            logger.debug( "ID Token retrieved from the validated tokens cache : " + idToken );
+            token.setIdToken( idToken.copy( ) );
+            return;
+        }
+
+        _parser.parseJWT( token, clientConfig, serverConfig, strStoredNonce, logger );
+
+        Instant expiration = getExpiration( token.getIdTokenString( ) );
+        if ( expiration != null && token.getIdToken( ) != null )
+        {
+            _idTokens.put( strKey, token.getIdToken( ).copy( ), expiration );
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public String parseJWT( String strJwt, AuthClientConf clientConfig, AuthServerConf serverConfig, Logger logger ) throws TokenValidationException
+    {
+        if ( strJwt == null )
+        {
+            return _parser.parseJWT( strJwt, clientConfig, serverConfig, logger );
+        }
+        String strKey = getKey( strJwt, clientConfig, serverConfig );
+        String strClaims = _claims.get( strKey );
+        if ( strClaims != null )
+        {
+            return strClaims;
+        }
+
+        strClaims = _parser.parseJWT( strJwt, clientConfig, serverConfig, logger );
+
+        Instant expiration = getExpiration( strJwt );
+        if ( expiration != null && strClaims != null )
+        {
+            _claims.put( strKey, strClaims, expiration );
+        }
+        return strClaims;
+    }
+
+    /**
+     * Gets the ratio of validations answered by the cache
+     * 
+     * @return the hit ratio, between 0 and 1
+     */
+    public double getHitRatio( )
+    {
+        long lHits = _idTokens.getHitCount( ) + _claims.getHitCount( );
+        long lLookups = lHits + _idTokens.getMissCount( ) + _claims.getMissCount( );
+        return lLookups == 0 ? 0d : (double) lHits / lLookups;
+    }
+
+    /**
+     * Gets the cache key of a JWT : the digest of the compact JWT and of the configuration it is validated with
+     * 
+     * @param strJwt
+     *            the compact JWT
+     * @param clientConfig
+     *            The client configuration
+     * @param serverConfig
+     *            The server configuration
+     * @return the key
+     */
+    private static String getKey( String strJwt, AuthClientConf clientConfig, AuthServerConf serverConfig )
+    {
+        return OauthUtils.digest( strJwt, clientConfig == null ? null : clientConfig.getClientId( ),
+                serverConfig == null ? null : serverConfig.getIssuer( ) );
+    }
+
+    /**
+     * Read the expiration of a validated compact JWT
+     * 
+     * @param strJwt
+     *            the compact JWT
+     * @return the expiration, or <code>null</code> if it can't be read
+     */
+    private static Instant getExpiration( String strJwt )
+    {
+        String [ ] parts = strJwt.split( "\\." );
+        if ( parts.length < 2 )
+        {
+            return null;
+        }
+        try
+        {
+            JsonNode payload = _mapper.readTree( Base64.getUrlDecoder( ).decode( parts [1] ) );
+            JsonNode expiration = payload.get( CLAIM_EXPIRATION );
+            if ( expiration != null && expiration.canConvertToLong( ) )
+            {
+                return Instant.ofEpochSecond( expiration.asLong( ) );
+            }
+        }
+        catch( IOException | IllegalArgumentException e )
+        {
+            _logger.debug( "Unable to read the expiration of the JWT : " + e.getMessage( ) );
+        }
+        return null;
+    }
+}
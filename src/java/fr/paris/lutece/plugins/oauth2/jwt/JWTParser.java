@@ -33,11 +33,15 @@
  */
 package fr.paris.lutece.plugins.oauth2.jwt;
 
+import java.io.IOException;
+import java.util.Map;
+
 import org.apache.log4j.Logger;
 
 import fr.paris.lutece.plugins.oauth2.business.AuthClientConf;
 import fr.paris.lutece.plugins.oauth2.business.AuthServerConf;
 import fr.paris.lutece.plugins.oauth2.business.Token;
+import fr.paris.lutece.plugins.oauth2.service.MapperService;
 
 /**
  * JWTParser
@@ -79,5 +83,36 @@ public interface JWTParser
      */
     String parseJWT( String strJwt, AuthClientConf clientConfig, AuthServerConf serverConfig, Logger logger )
             throws TokenValidationException;
+
+    /**
+     * Validate a jwt and extract its claims. The default implementation reads the JSON returned by
+     * {@link #parseJWT(String, AuthClientConf, AuthServerConf, Logger)}.
+     *
+     * @param strJwt
+     *            The jwt
+     * @param clientConfig
+     *            The client configuration
+     * @param serverConfig
+     *            The server configuration
+     * @param logger
+     *            The logger
+     * @return the claims, indexed by claim name
+     * @throws TokenValidationException
+     *             if an error occurs
+     * @since 2.0.1
+     */
+    @SuppressWarnings( "unchecked" )
+    default Map<String, Object> parseClaims( String strJwt, AuthClientConf clientConfig, AuthServerConf serverConfig, Logger logger )
+            throws TokenValidationException
+    {
+        try
+        {
+            return MapperService.parse( parseJWT( strJwt, clientConfig, serverConfig, logger ), Map.class );
+        }
+        catch( IOException e )
+        {
+            throw new TokenValidationException( e.getMessage( ), e );
+        }
+    }
     
 }
@@ -35,6 +35,7 @@ package fr.paris.lutece.plugins.oauth2.jwt;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
@@ -49,13 +50,13 @@ import fr.paris.lutece.plugins.oauth2.business.Token;
 import fr.paris.lutece.plugins.oauth2.service.CachingHttpAccessService;
 import fr.paris.lutece.plugins.oauth2.web.Constants;
 import fr.paris.lutece.util.httpaccess.HttpAccess;
-import fr.paris.lutece.util.httpaccess.HttpAccessService;
 import fr.paris.lutece.util.httpaccess.PropertiesHttpClientConfiguration;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.Header;
 import io.jsonwebtoken.Jws;
 import io.jsonwebtoken.Jwt;
+import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.JwtParserBuilder;
 import io.jsonwebtoken.Jwts;
@@ -69,18 +70,139 @@ import io.jsonwebtoken.security.SignatureException;
  */
 public class JjwtJWTParser implements JWTParser
 {
+    private static final int PARSERS_MAX_COUNT = 32;
+
     private final Map<String, KeyLocator> _keyLocatorsMap = new ConcurrentHashMap<>( );
+    private final Map<ParserKey, JwtParser> _parsersMap = new ConcurrentHashMap<>( );
     private final HttpAccess _httpAccess;
+    private long _lJwksCacheTtl = KeyLocator.DEFAULT_CACHE_TTL;
+    private long _lJwksMinRefreshInterval = KeyLocator.DEFAULT_MIN_REFRESH_INTERVAL;
 
     public JjwtJWTParser( )
     {
-        HttpAccessService accessService = new CachingHttpAccessService( new PropertiesHttpClientConfiguration( ) );
-        this._httpAccess = new HttpAccess( accessService );
+        this( new HttpAccess( new CachingHttpAccessService( new PropertiesHttpClientConfiguration( ) ) ) );
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param httpAccess
+     *            the httpAccess used to fetch the JWKS
+     * @since 2.0.1
+     */
+    public JjwtJWTParser( HttpAccess httpAccess )
+    {
+        this._httpAccess = httpAccess;
+    }
+
+    /**
+     * Gets the time to live of the keys fetched from the JWKS endpoints, in seconds
+     * 
+     * @return the time to live of the keys, in seconds
+     * @since 2.0.1
+     */
+    public long getJwksCacheTtl( )
+    {
+        return _lJwksCacheTtl;
+    }
+
+    /**
+     * Sets the time to live of the keys fetched from the JWKS endpoints, in seconds
+     * 
+     * @param lJwksCacheTtl
+     *            the time to live of the keys, in seconds
+     * @since 2.0.1
+     */
+    public void setJwksCacheTtl( long lJwksCacheTtl )
+    {
+        _lJwksCacheTtl = lJwksCacheTtl;
+    }
+
+    /**
+     * Gets the minimum interval between two fetches of a JWKS triggered by an unknown key id, in seconds
+     * 
+     * @return the minimum refresh interval, in seconds
+     * @since 2.0.1
+     */
+    public long getJwksMinRefreshInterval( )
+    {
+        return _lJwksMinRefreshInterval;
+    }
+
+    /**
+     * Sets the minimum interval between two fetches of a JWKS triggered by an unknown key id, in seconds
+     * 
+     * @param lJwksMinRefreshInterval
+     *            the minimum refresh interval, in seconds
+     * @since 2.0.1
+     */
+    public void setJwksMinRefreshInterval( long lJwksMinRefreshInterval )
+    {
+        _lJwksMinRefreshInterval = lJwksMinRefreshInterval;
+    }
+
+    /**
+     * Clear the parsers and the keys kept by this parser, so that they are built again from the current configuration
+     * 
+     * @since 2.0.1
+     */
+    public void clearCache( )
+    {
+        _parsersMap.clear( );
+        _keyLocatorsMap.clear( );
     }
 
     private KeyLocator getKeyLocator( String strwksEndpointUri )
     {
-        return _keyLocatorsMap.computeIfAbsent( strwksEndpointUri, uri -> new KeyLocator( uri, _httpAccess ) );
+        return _keyLocatorsMap.computeIfAbsent( strwksEndpointUri, uri -> new KeyLocator( uri, _httpAccess, _lJwksCacheTtl, _lJwksMinRefreshInterval ) );
+    }
+
+    /**
+     * Get the parser matching the configuration. Parsers are immutable and thread safe, so they are built once for each key configuration.
+     * 
+     * @param clientConfig
+     *            The client configuration
+     * @param serverConfig
+     *            The server configuration
+     * @return the parser
+     */
+    private JwtParser getParser( AuthClientConf clientConfig, AuthServerConf serverConfig )
+    {
+        ParserKey parserKey = new ParserKey( serverConfig.getJwksEndpointUri( ), clientConfig.getClientSecret( ) );
+        JwtParser parser = _parsersMap.get( parserKey );
+        if ( parser == null )
+        {
+            if ( _parsersMap.size( ) >= PARSERS_MAX_COUNT )
+            {
+                // the configuration has changed many times, forget the obsolete parsers
+                _parsersMap.clear( );
+            }
+            parser = _parsersMap.computeIfAbsent( parserKey, this::buildParser );
+        }
+        return parser;
+    }
+
+    /**
+     * Build a parser
+     * 
+     * @param parserKey
+     *            the key configuration
+     * @return the parser
+     */
+    private JwtParser buildParser( ParserKey parserKey )
+    {
+        JwtParserBuilder parserBuilder = Jwts.parser( );
+
+        if ( parserKey._strJwksEndpointUri != null )
+        {
+            parserBuilder.keyLocator( getKeyLocator( parserKey._strJwksEndpointUri ) );
+        }
+        else
+        {
+            parserBuilder.verifyWith( Keys.hmacShaKeyFor( parserKey._strClientSecret.getBytes( StandardCharsets.UTF_8 ) ) );
+        }
+
+        return parserBuilder.build( );
     }
 
     /**
@@ -210,6 +332,23 @@ public class JjwtJWTParser implements JWTParser
         return strClaims;
     }
     
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public Map<String, Object> parseClaims( String strJwt, AuthClientConf clientConfig, AuthServerConf serverConfig, Logger logger )
+            throws TokenValidationException
+    {
+        try
+        {
+            return getClaims( strJwt, clientConfig, serverConfig );
+        }
+        catch( JwtException | IllegalArgumentException ex )
+        {
+            throw new TokenValidationException( ex.getMessage( ), ex );
+        }
+    }
+
     /**
      * Get claims
      * @param strCompactJwt
@@ -220,18 +359,7 @@ public class JjwtJWTParser implements JWTParser
      */
     private Claims getClaims ( String strCompactJwt, AuthClientConf clientConfig, AuthServerConf serverConfig) throws TokenValidationException
     {
-        JwtParserBuilder parserBuilder = Jwts.parser( );
-
-        if ( serverConfig.getJwksEndpointUri( ) != null )
-        {
-            parserBuilder.keyLocator( getKeyLocator( serverConfig.getJwksEndpointUri( ) ) );
-        }
-        else
-        {
-            parserBuilder.verifyWith( Keys.hmacShaKeyFor( clientConfig.getClientSecret( ).getBytes( StandardCharsets.UTF_8 ) ) );
-        }
-
-        JwtParser parser = parserBuilder.build( );
+        JwtParser parser = getParser( clientConfig, serverConfig );
         Claims claims;
         if ( serverConfig == null || serverConfig.getIDTokenSignatureAlgorithmNames( ) == null )
         {
@@ -252,4 +380,41 @@ public class JjwtJWTParser implements JWTParser
         
         return claims;
     }
+
+    /**
+     * Key configuration of a parser
+     */
+    private static final class ParserKey
+    {
+        private final String _strJwksEndpointUri;
+        private final String _strClientSecret;
+
+        ParserKey( String strJwksEndpointUri, String strClientSecret )
+        {
+            _strJwksEndpointUri = strJwksEndpointUri;
+            // the client secret is only used when there is no JWKS
+            _strClientSecret = strJwksEndpointUri == null ? strClientSecret : null;
+        }
+
+        @Override
+        public boolean equals( Object obj )
+        {
+            if ( this == obj )
+            {
+                return true;
+            }
+            if ( !( obj instanceof ParserKey ) )
+            {
+                return false;
+            }
+            ParserKey other = (ParserKey) obj;
+            return Objects.equals( _strJwksEndpointUri, other._strJwksEndpointUri ) && Objects.equals( _strClientSecret, other._strClientSecret );
+        }
+
+        @Override
+        public int hashCode( )
+        {
+            return Objects.hash( _strJwksEndpointUri, _strClientSecret );
+        }
+    }
 }
@@ -34,22 +34,52 @@
 package fr.paris.lutece.plugins.oauth2.jwt;
 
 import java.security.Key;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.log4j.Logger;
+
+import fr.paris.lutece.plugins.oauth2.service.ExpiringCache;
+import fr.paris.lutece.plugins.oauth2.web.Constants;
 import fr.paris.lutece.portal.service.util.AppException;
 import fr.paris.lutece.util.httpaccess.HttpAccess;
 import fr.paris.lutece.util.httpaccess.HttpAccessException;
 import io.jsonwebtoken.JwsHeader;
 import io.jsonwebtoken.LocatorAdapter;
+import io.jsonwebtoken.io.Parser;
+import io.jsonwebtoken.security.Jwk;
 import io.jsonwebtoken.security.JwkSet;
 import io.jsonwebtoken.security.Jwks;
 
 /**
- * Key locator which fetches keys from a JWKS endpoint
+ * Key locator which fetches keys from a JWKS endpoint. The keys are converted once when the JWKS is fetched and kept in memory, indexed by key id.
  */
 public class KeyLocator extends LocatorAdapter<Key>
 {
+    /** Default time to live of the keys, in seconds */
+    public static final long DEFAULT_CACHE_TTL = 3600L;
+    /** Default minimum interval between two fetches triggered by an unknown key id, in seconds */
+    public static final long DEFAULT_MIN_REFRESH_INTERVAL = 30L;
+
+    private static final int UNKNOWN_KEY_IDS_MAX_SIZE = 1000;
+    private static final long UNKNOWN_KEY_IDS_TTL = 300L;
+
+    private static Logger _logger = Logger.getLogger( Constants.LOGGER_OAUTH2 );
+    private static final Parser<JwkSet> _jwkSetParser = Jwks.setParser( ).build( );
+
     private final String _strJwksEndpointUri;
     private final HttpAccess _httpAccess;
+    private final long _lCacheTtl;
+    private final long _lMinRefreshInterval;
+    private final AtomicReference<KeySet> _keySet = new AtomicReference<>( );
+    private final AtomicReference<CompletableFuture<KeySet>> _pendingRefresh = new AtomicReference<>( );
+    private final ExpiringCache<String, Boolean> _unknownKeyIds = new ExpiringCache<>( UNKNOWN_KEY_IDS_MAX_SIZE );
+    private volatile FetchFailure _lastFailure;
 
     /**
      * Constructs a Key Locator
@@ -60,9 +90,29 @@ public class KeyLocator extends LocatorAdapter<Key>
      *            the httpAccess for fetching the file
      */
     public KeyLocator( String strJwksEndpointUri, HttpAccess httpAccess )
+    {
+        this( strJwksEndpointUri, httpAccess, DEFAULT_CACHE_TTL, DEFAULT_MIN_REFRESH_INTERVAL );
+    }
+
+    /**
+     * Constructs a Key Locator
+     * 
+     * @param strJwksEndpointUri
+     *            the URI of the JKWS resource
+     * @param httpAccess
+     *            the httpAccess for fetching the file
+     * @param lCacheTtl
+     *            the time to live of the fetched keys, in seconds
+     * @param lMinRefreshInterval
+     *            the minimum interval between two fetches triggered by an unknown key id, in seconds
+     * @since 2.0.1
+     */
+    public KeyLocator( String strJwksEndpointUri, HttpAccess httpAccess, long lCacheTtl, long lMinRefreshInterval )
     {
         _strJwksEndpointUri = strJwksEndpointUri;
         _httpAccess = httpAccess;
+        _lCacheTtl = lCacheTtl;
+        _lMinRefreshInterval = lMinRefreshInterval;
     }
 
     @Override
@@ -78,11 +128,273 @@ public class KeyLocator extends LocatorAdapter<Key>
         }
     }
 
-    private Key getKey( String keyId ) throws HttpAccessException
+    /**
+     * Gets a key by its id. The JWKS is fetched again if the keys are expired, or if the key id is unknown and the keys have not been fetched during the
+     * minimum refresh interval. Key ids which were not found in a freshly fetched JWKS are remembered for a while and don't trigger any fetch.
+     * 
+     * @param strKeyId
+     *            the key id
+     * @return the key, or <code>null</code> if no key matches the key id
+     * @throws HttpAccessException
+     *             if the JWKS can't be fetched
+     * @since 2.0.1
+     */
+    public Key getKey( String strKeyId ) throws HttpAccessException
+    {
+        KeySet keySet = _keySet.get( );
+        if ( keySet == null || keySet.isExpired( ) )
+        {
+            return rememberIfUnknown( strKeyId, refresh( ).getKey( strKeyId ) );
+        }
+        Key key = keySet.getKey( strKeyId );
+        if ( key != null || isKnownAsUnknown( strKeyId ) || keySet.getAge( ) < _lMinRefreshInterval * 1000L )
+        {
+            return key;
+        }
+        // the keys may have been rotated
+        return rememberIfUnknown( strKeyId, refresh( ).getKey( strKeyId ) );
+    }
+
+    /**
+     * Gets the number of lookups of unknown key ids that have been answered without fetching the JWKS
+     * 
+     * @return the number of lookups answered by the unknown key ids cache
+     * @since 2.0.1
+     */
+    public long getUnknownKeyIdHits( )
+    {
+        return _unknownKeyIds.getHitCount( );
+    }
+
+    /**
+     * Gets the number of unknown key ids currently remembered
+     * 
+     * @return the number of unknown key ids
+     * @since 2.0.1
+     */
+    public int getUnknownKeyIdsCount( )
+    {
+        return _unknownKeyIds.size( );
+    }
+
+    /**
+     * Tells if the key id has recently been checked as absent from the JWKS
+     * 
+     * @param strKeyId
+     *            the key id
+     * @return <code>true</code> if the key id is known as unknown
+     */
+    private boolean isKnownAsUnknown( String strKeyId )
+    {
+        return strKeyId != null && _unknownKeyIds.get( strKeyId ) != null;
+    }
+
+    /**
+     * Remember the key id if no key has been found in a freshly fetched JWKS
+     * 
+     * @param strKeyId
+     *            the key id
+     * @param key
+     *            the key found
+     * @return the key
+     */
+    private Key rememberIfUnknown( String strKeyId, Key key )
+    {
+        if ( key == null && strKeyId != null )
+        {
+            _logger.debug( "Unknown key id in JWKS " + _strJwksEndpointUri + " : " + strKeyId );
+            _unknownKeyIds.put( strKeyId, Boolean.TRUE, Instant.now( ).plusSeconds( UNKNOWN_KEY_IDS_TTL ) );
+        }
+        return key;
+    }
+
+    /**
+     * Fetch the JWKS and replace the keys. Concurrent callers share the same fetch. After a failed fetch, no other fetch is
+     * made during the minimum refresh interval, so that the endpoint is not hammered while it is down.
+     * 
+     * @return the new key set
+     * @throws HttpAccessException
+     *             if the JWKS can't be fetched
+     */
+    private KeySet refresh( ) throws HttpAccessException
+    {
+        checkLastFailure( );
+        CompletableFuture<KeySet> future = new CompletableFuture<>( );
+        CompletableFuture<KeySet> pendingRefresh = _pendingRefresh.compareAndExchange( null, future );
+        if ( pendingRefresh != null )
+        {
+            return waitFor( pendingRefresh );
+        }
+        fetchInto( future );
+        return waitFor( future );
+    }
+
+    /**
+     * Fetch the JWKS and complete the refresh shared by the callers
+     * 
+     * @param future
+     *            the refresh to complete
+     */
+    private void fetchInto( CompletableFuture<KeySet> future )
+    {
+        try
+        {
+            future.complete( fetch( ) );
+            _lastFailure = null;
+        }
+        catch( HttpAccessException | RuntimeException e )
+        {
+            _lastFailure = new FetchFailure( e, System.currentTimeMillis( ) );
+            future.completeExceptionally( e );
+        }
+        finally
+        {
+            _pendingRefresh.set( null );
+        }
+    }
+
+    /**
+     * Fail without fetching the JWKS if the last fetch failed during the minimum refresh interval
+     * 
+     * @throws HttpAccessException
+     *             if the last fetch failed during the minimum refresh interval
+     */
+    private void checkLastFailure( ) throws HttpAccessException
+    {
+        FetchFailure failure = _lastFailure;
+        if ( failure != null && System.currentTimeMillis( ) - failure._lTime < _lMinRefreshInterval * 1000L )
+        {
+            String strMessage = "The last fetch of the JWKS from " + _strJwksEndpointUri + " failed less than " + _lMinRefreshInterval
+                    + " seconds ago : " + failure._exception.getMessage( );
+            if ( failure._exception instanceof HttpAccessException )
+            {
+                throw new HttpAccessException( strMessage, failure._exception );
+            }
+            throw new AppException( strMessage, failure._exception );
+        }
+    }
+
+    /**
+     * Wait for the refresh made by another thread
+     * 
+     * @param pendingRefresh
+     *            the pending refresh
+     * @return the new key set
+     * @throws HttpAccessException
+     *             if the JWKS can't be fetched
+     */
+    private KeySet waitFor( CompletableFuture<KeySet> pendingRefresh ) throws HttpAccessException
+    {
+        try
+        {
+            return pendingRefresh.get( );
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+            throw new AppException( "Interrupted while fetching the JWKS from " + _strJwksEndpointUri, e );
+        }
+        catch( ExecutionException e )
+        {
+            if ( e.getCause( ) instanceof HttpAccessException )
+            {
+                throw (HttpAccessException) e.getCause( );
+            }
+            if ( e.getCause( ) instanceof RuntimeException )
+            {
+                throw (RuntimeException) e.getCause( );
+            }
+            throw new AppException( e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Fetch the JWKS and replace the keys
+     * 
+     * @return the new key set
+     * @throws HttpAccessException
+     *             if the JWKS can't be fetched
+     */
+    private KeySet fetch( ) throws HttpAccessException
     {
         String jwks = _httpAccess.doGet( _strJwksEndpointUri );
-        JwkSet jwkSet = Jwks.setParser( ).build( ).parse( jwks );
-        return jwkSet.getKeys( ).stream( ).filter( k -> k.getId( ).equals( keyId ) ).map( k -> k.toKey( ) ).findFirst( ).orElse( null );
+        JwkSet jwkSet = _jwkSetParser.parse( jwks );
+        long lNow = System.currentTimeMillis( );
+        KeySet keySet = new KeySet( jwkSet, lNow, lNow + _lCacheTtl * 1000L );
+        _keySet.set( keySet );
+        keySet.getKeyIds( ).forEach( _unknownKeyIds::remove );
+        _logger.debug( "JWKS fetched from " + _strJwksEndpointUri + " : " + keySet.size( ) + " keys" );
+        return keySet;
+    }
+
+    /**
+     * Failure of a fetch of the JWKS
+     */
+    private static final class FetchFailure
+    {
+        private final Exception _exception;
+        private final long _lTime;
+
+        FetchFailure( Exception exception, long lTime )
+        {
+            _exception = exception;
+            _lTime = lTime;
+        }
     }
 
+    /**
+     * Immutable set of converted keys
+     */
+    private static final class KeySet
+    {
+        private final Map<String, Key> _mapKeys;
+        private final Key _singleKey;
+        private final long _lFetchTime;
+        private final long _lExpirationTime;
+
+        KeySet( JwkSet jwkSet, long lFetchTime, long lExpirationTime )
+        {
+            Map<String, Key> mapKeys = new HashMap<>( );
+            Key singleKey = null;
+            for ( Jwk<?> jwk : jwkSet.getKeys( ) )
+            {
+                Key key = jwk.toKey( );
+                if ( jwk.getId( ) != null )
+                {
+                    mapKeys.put( jwk.getId( ), key );
+                }
+                singleKey = key;
+            }
+            _mapKeys = Map.copyOf( mapKeys );
+            // a token without key id can only be verified if the set holds a single key
+            _singleKey = jwkSet.getKeys( ).size( ) == 1 ? singleKey : null;
+            _lFetchTime = lFetchTime;
+            _lExpirationTime = lExpirationTime;
+        }
+
+        Key getKey( String strKeyId )
+        {
+            return strKeyId == null ? _singleKey : _mapKeys.get( strKeyId );
+        }
+
+        Set<String> getKeyIds( )
+        {
+            return _mapKeys.keySet( );
+        }
+
+        int size( )
+        {
+            return _mapKeys.size( );
+        }
+
+        long getAge( )
+        {
+            return System.currentTimeMillis( ) - _lFetchTime;
+        }
+
+        boolean isExpired( )
+        {
+            return System.currentTimeMillis( ) >= _lExpirationTime;
+        }
+    }
 }
@@ -36,7 +36,12 @@ package fr.paris.lutece.plugins.oauth2.jwt;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.nimbusds.jose.Algorithm;
+import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.crypto.MACVerifier;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
 
 import com.nimbusds.jwt.JWT;
 import com.nimbusds.jwt.PlainJWT;
@@ -47,15 +52,29 @@ import fr.paris.lutece.plugins.oauth2.business.AuthClientConf;
 import fr.paris.lutece.plugins.oauth2.business.AuthServerConf;
 import fr.paris.lutece.plugins.oauth2.business.IDToken;
 import fr.paris.lutece.plugins.oauth2.business.Token;
+import fr.paris.lutece.plugins.oauth2.service.CachingHttpAccessService;
+import fr.paris.lutece.plugins.oauth2.service.ExpiringCache;
+import fr.paris.lutece.plugins.oauth2.service.OauthUtils;
 import fr.paris.lutece.plugins.oauth2.web.Constants;
+import fr.paris.lutece.util.httpaccess.HttpAccess;
+import fr.paris.lutece.util.httpaccess.HttpAccessException;
+import fr.paris.lutece.util.httpaccess.PropertiesHttpClientConfiguration;
 import io.jsonwebtoken.lang.Collections;
 
 import org.apache.log4j.Logger;
 
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
 import java.text.ParseException;
+import java.time.Instant;
 
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * MitreJWTParser
@@ -64,9 +83,64 @@ import java.util.HashSet;
  */
 public class MitreJWTParser implements JWTParser
 {
+    private static final Set<JWSAlgorithm> MAC_ALGORITHMS = Set.of( JWSAlgorithm.HS256, JWSAlgorithm.HS384, JWSAlgorithm.HS512 );
+    private static final int VERIFIERS_MAX_COUNT = 256;
+    private static final char SEPARATOR = '|';
+
     // Allow for time sync issues by having a window of X seconds.
     private int _nTimeSkewAllowance = 300;
 
+    private final Map<String, KeyLocator> _keyLocatorsMap = new ConcurrentHashMap<>( );
+    private final ExpiringCache<String, CachedVerifier> _verifiers = new ExpiringCache<>( VERIFIERS_MAX_COUNT );
+    private final ExpiringCache<String, JWSVerifier> _macVerifiers = new ExpiringCache<>( VERIFIERS_MAX_COUNT );
+    private final HttpAccess _httpAccess;
+    private long _lJwksCacheTtl = KeyLocator.DEFAULT_CACHE_TTL;
+    private long _lJwksMinRefreshInterval = KeyLocator.DEFAULT_MIN_REFRESH_INTERVAL;
+
+    /**
+     * Constructor. The JWKS are fetched with an HttpAccess configured by the httpaccess properties, which caches the responses.
+     */
+    public MitreJWTParser( )
+    {
+        this( new HttpAccess( new CachingHttpAccessService( new PropertiesHttpClientConfiguration( ) ) ) );
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param httpAccess
+     *            the httpAccess used to fetch the JWKS
+     * @since 2.0.1
+     */
+    public MitreJWTParser( HttpAccess httpAccess )
+    {
+        this._httpAccess = httpAccess;
+    }
+
+    /**
+     * Sets the time to live of the keys fetched from the JWKS endpoints, in seconds
+     * 
+     * @param lJwksCacheTtl
+     *            the time to live of the keys, in seconds
+     * @since 2.0.1
+     */
+    public void setJwksCacheTtl( long lJwksCacheTtl )
+    {
+        _lJwksCacheTtl = lJwksCacheTtl;
+    }
+
+    /**
+     * Sets the minimum interval between two fetches of a JWKS triggered by an unknown key id, in seconds
+     * 
+     * @param lJwksMinRefreshInterval
+     *            the minimum refresh interval, in seconds
+     * @since 2.0.1
+     */
+    public void setJwksMinRefreshInterval( long lJwksMinRefreshInterval )
+    {
+        _lJwksMinRefreshInterval = lJwksMinRefreshInterval;
+    }
+
     /**
      * {@inheritDoc }
      */
@@ -129,21 +203,7 @@ public class MitreJWTParser implements JWTParser
             {
                 logger.debug( "ID token is a signed JWT" );
 
-                /*
-                 * // check the signature JwtSigningAndValidationService jwtValidator = null;
-                 * 
-                 * SignedJWT signedIdToken = (SignedJWT) idToken;
-                 * 
-                 * if (tokenAlg.equals(JWSAlgorithm.HS256) || tokenAlg.equals(JWSAlgorithm.HS384) || tokenAlg.equals(JWSAlgorithm.HS512)) {
-                 * 
-                 * // generate one based on client secret jwtValidator = symmetricCacheService.getSymmetricValidtor( clientConfig.getClient()); } else { //
-                 * otherwise load from the server's public key jwtValidator = validationServices.getValidator( serverConfig.getJwksUri() ); }
-                 * 
-                 * if (jwtValidator != null) { if (!jwtValidator.validateSignature(signedIdToken)) { throw new
-                 * TokenValidationException("Signature validation failed"); } } else {
-                 * _logger.error("No validation service found. Skipping signature validation"); throw new
-                 * TokenValidationException("Unable to find an appropriate signature validator for ID Token."); }
-                 */
+                verifySignature( (SignedJWT) jwt, clientConfig, serverConfig );
             } // TODO: encrypted id tokens
 
         // check the issuer
@@ -292,6 +352,10 @@ public class MitreJWTParser implements JWTParser
         {
             throw new TokenValidationException( "Unable to parse JWT : " + ex.getMessage( ), ex );
         }
+        if ( jwt instanceof SignedJWT )
+        {
+            verifySignature( (SignedJWT) jwt, clientConfig, serverConfig );
+        }
         try
         {            
             strClaims = new ObjectMapper( ).writeValueAsString( jwt.getJWTClaimsSet( ) );
@@ -302,4 +366,174 @@ public class MitreJWTParser implements JWTParser
         }
         return strClaims;
     }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public Map<String, Object> parseClaims( String strJwt, AuthClientConf clientConfig, AuthServerConf serverConfig, Logger logger )
+            throws TokenValidationException
+    {
+        JWT jwt;
+        try
+        {
+            jwt = com.nimbusds.jwt.JWTParser.parse( strJwt );
+        }
+        catch( ParseException ex )
+        {
+            throw new TokenValidationException( "Unable to parse JWT : " + ex.getMessage( ), ex );
+        }
+        if ( jwt instanceof SignedJWT )
+        {
+            verifySignature( (SignedJWT) jwt, clientConfig, serverConfig );
+        }
+        try
+        {
+            return jwt.getJWTClaimsSet( ).getAllClaims( );
+        }
+        catch( ParseException ex )
+        {
+            throw new TokenValidationException( "Unable to get Claims set from JWT : " + ex.getMessage( ), ex );
+        }
+    }
+
+    /**
+     * Verify the signature of a JWT, with the client secret for the HMAC algorithms, or with the keys of the JWKS endpoint of the server otherwise
+     * 
+     * @param signedJwt
+     *            the signed JWT
+     * @param clientConfig
+     *            The client configuration
+     * @param serverConfig
+     *            The server configuration
+     * @throws TokenValidationException
+     *             if the signature is not valid
+     */
+    private void verifySignature( SignedJWT signedJwt, AuthClientConf clientConfig, AuthServerConf serverConfig ) throws TokenValidationException
+    {
+        JWSVerifier verifier = getVerifier( signedJwt.getHeader( ).getAlgorithm( ), signedJwt.getHeader( ).getKeyID( ), clientConfig, serverConfig );
+
+        try
+        {
+            if ( !signedJwt.verify( verifier ) )
+            {
+                throw new TokenValidationException( "Signature validation failed" );
+            }
+        }
+        catch( JOSEException | IllegalStateException ex )
+        {
+            throw new TokenValidationException( "Unable to verify the signature of the JWT : " + ex.getMessage( ), ex );
+        }
+    }
+
+    /**
+     * Get the verifier for a signature. The verifiers are built once for each key, and built again when the keys of the JWKS are refreshed.
+     * The least recently used verifiers are evicted first when there are too many of them.
+     * 
+     * @param alg
+     *            the signature algorithm
+     * @param strKeyId
+     *            the key id
+     * @param clientConfig
+     *            The client configuration
+     * @param serverConfig
+     *            The server configuration
+     * @return the verifier
+     * @throws TokenValidationException
+     *             if no verifier can be built
+     */
+    private JWSVerifier getVerifier( JWSAlgorithm alg, String strKeyId, AuthClientConf clientConfig, AuthServerConf serverConfig )
+            throws TokenValidationException
+    {
+        if ( MAC_ALGORITHMS.contains( alg ) )
+        {
+            if ( clientConfig == null || clientConfig.getClientSecret( ) == null )
+            {
+                throw new TokenValidationException( "No client secret to verify a signature using " + alg );
+            }
+            String strVerifierKey = OauthUtils.digest( clientConfig.getClientSecret( ) );
+            JWSVerifier macVerifier = _macVerifiers.get( strVerifierKey );
+            if ( macVerifier == null )
+            {
+                macVerifier = new MACVerifier( clientConfig.getClientSecret( ).getBytes( StandardCharsets.UTF_8 ) );
+                _macVerifiers.put( strVerifierKey, macVerifier, Instant.now( ).plusSeconds( _lJwksCacheTtl ) );
+            }
+            return macVerifier;
+        }
+
+        String strJwksEndpointUri = serverConfig.getJwksEndpointUri( );
+        if ( strJwksEndpointUri == null )
+        {
+            throw new TokenValidationException( "No JWKS endpoint to verify a signature using " + alg );
+        }
+
+        Key key;
+        try
+        {
+            key = getKeyLocator( strJwksEndpointUri ).getKey( strKeyId );
+        }
+        catch( HttpAccessException ex )
+        {
+            throw new TokenValidationException( "Unable to fetch the JWKS : " + ex.getMessage( ), ex );
+        }
+        if ( key == null )
+        {
+            throw new TokenValidationException( "No key found for the key id " + strKeyId );
+        }
+
+        String strVerifierKey = strJwksEndpointUri + SEPARATOR + strKeyId + SEPARATOR + alg.getName( );
+        CachedVerifier cachedVerifier = _verifiers.get( strVerifierKey );
+        if ( cachedVerifier == null || cachedVerifier._key != key )
+        {
+            // unknown key, or key converted again by a refresh of the JWKS
+            cachedVerifier = new CachedVerifier( key, createVerifier( alg, key ) );
+            _verifiers.put( strVerifierKey, cachedVerifier, Instant.now( ).plusSeconds( _lJwksCacheTtl ) );
+        }
+        return cachedVerifier._verifier;
+    }
+
+    /**
+     * Create a verifier for a public key
+     * 
+     * @param alg
+     *            the signature algorithm
+     * @param key
+     *            the public key
+     * @return the verifier
+     * @throws TokenValidationException
+     *             if the key doesn't match the algorithm
+     */
+    private JWSVerifier createVerifier( JWSAlgorithm alg, Key key ) throws TokenValidationException
+    {
+        if ( key instanceof RSAPublicKey )
+        {
+            return new RSASSAVerifier( (RSAPublicKey) key );
+        }
+        if ( key instanceof ECPublicKey )
+        {
+            ECPublicKey ecKey = (ECPublicKey) key;
+            return new ECDSAVerifier( ecKey.getW( ).getAffineX( ), ecKey.getW( ).getAffineY( ) );
+        }
+        throw new TokenValidationException( "Unsupported key type " + key.getAlgorithm( ) + " for the algorithm " + alg );
+    }
+
+    private KeyLocator getKeyLocator( String strJwksEndpointUri )
+    {
+        return _keyLocatorsMap.computeIfAbsent( strJwksEndpointUri, uri -> new KeyLocator( uri, _httpAccess, _lJwksCacheTtl, _lJwksMinRefreshInterval ) );
+    }
+
+    /**
+     * Verifier built for a key
+     */
+    private static final class CachedVerifier
+    {
+        private final Key _key;
+        private final JWSVerifier _verifier;
+
+        CachedVerifier( Key key, JWSVerifier verifier )
+        {
+            _key = key;
+            _verifier = verifier;
+        }
+    }
 }
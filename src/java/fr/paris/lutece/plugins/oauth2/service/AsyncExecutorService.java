@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import fr.paris.lutece.plugins.oauth2.web.Constants;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Executor running the blocking calls to the authorization servers outside of the request threads. The execution mode is
+ * set by the oauth2.async.executor property :
+ * <ul>
+ * <li>virtual : one virtual thread per call, which requires a JVM supporting them</li>
+ * <li>platform : a bounded pool of platform threads</li>
+ * <li>auto (default) : virtual threads when the JVM supports them, platform threads otherwise</li>
+ * </ul>
+ * 
+ * @since 2.0.1
+ */
+public final class AsyncExecutorService
+{
+    public static final String MODE_AUTO = "auto";
+    public static final String MODE_VIRTUAL = "virtual";
+    public static final String MODE_PLATFORM = "platform";
+
+    private static final String PROPERTY_MODE = "oauth2.async.executor";
+    private static final String PROPERTY_POOL_SIZE = "oauth2.async.poolSize";
+    private static final String PROPERTY_QUEUE_SIZE = "oauth2.async.queueSize";
+    private static final int DEFAULT_POOL_SIZE = 20;
+    private static final int DEFAULT_QUEUE_SIZE = 500;
+    private static final String THREAD_NAME_PREFIX = "oauth2-async-";
+    private static final String METHOD_NEW_VIRTUAL_THREAD_EXECUTOR = "newVirtualThreadPerTaskExecutor";
+    private static final long SHUTDOWN_TIMEOUT = 10L;
+
+    private static Logger _logger = Logger.getLogger( Constants.LOGGER_OAUTH2 );
+    private static ExecutorService _executor;
+    private static boolean _bVirtualThreads;
+
+    /** Private constructor */
+    private AsyncExecutorService( )
+    {
+    }
+
+    /**
+     * Gets the executor, created on first use
+     * 
+     * @return the executor
+     */
+    public static synchronized ExecutorService getExecutor( )
+    {
+        if ( _executor == null )
+        {
+            String strMode = AppPropertiesService.getProperty( PROPERTY_MODE, MODE_AUTO );
+            _executor = createExecutor( strMode, AppPropertiesService.getPropertyInt( PROPERTY_POOL_SIZE, DEFAULT_POOL_SIZE ),
+                    AppPropertiesService.getPropertyInt( PROPERTY_QUEUE_SIZE, DEFAULT_QUEUE_SIZE ) );
+            _bVirtualThreads = !( _executor instanceof ThreadPoolExecutor );
+            _logger.info( "OAuth2 asynchronous calls executed by " + ( _bVirtualThreads ? "virtual threads" : "a pool of platform threads" ) );
+        }
+        return _executor;
+    }
+
+    /**
+     * Replaces the executor, for instance by an executor managed by the container. The previous executor is not shut down.
+     * 
+     * @param executor
+     *            the executor
+     */
+    public static synchronized void setExecutor( ExecutorService executor )
+    {
+        _executor = executor;
+        _bVirtualThreads = !( _executor instanceof ThreadPoolExecutor );
+    }
+
+    /**
+     * Checks if the calls are executed by virtual threads
+     * 
+     * @return true if the executor uses virtual threads
+     */
+    public static boolean isVirtualThreads( )
+    {
+        getExecutor( );
+        return _bVirtualThreads;
+    }
+
+    /**
+     * Runs a task asynchronously. A checked exception thrown by the task completes the future exceptionally with a
+     * {@link CompletionException} whose cause is the original exception.
+     * 
+     * @param <T>
+     *            the type of the result
+     * @param task
+     *            the task
+     * @return the future result of the task
+     */
+    public static <T> CompletableFuture<T> supplyAsync( Callable<T> task )
+    {
+        return CompletableFuture.supplyAsync( ( ) -> {
+            try
+            {
+                return task.call( );
+            }
+            catch( RuntimeException e )
+            {
+                throw e;
+            }
+            catch( Exception e )
+            {
+                throw new CompletionException( e );
+            }
+        }, getExecutor( ) );
+    }
+
+    /**
+     * Creates an executor
+     * 
+     * @param strMode
+     *            the execution mode (auto, virtual or platform)
+     * @param nPoolSize
+     *            the size of the pool of platform threads
+     * @param nQueueSize
+     *            the size of the queue of the pool of platform threads
+     * @return the executor
+     */
+    static ExecutorService createExecutor( String strMode, int nPoolSize, int nQueueSize )
+    {
+        if ( !MODE_PLATFORM.equalsIgnoreCase( strMode ) )
+        {
+            ExecutorService executor = newVirtualThreadExecutor( );
+            if ( executor != null )
+            {
+                return executor;
+            }
+            if ( MODE_VIRTUAL.equalsIgnoreCase( strMode ) )
+            {
+                _logger.warn( "Virtual threads are not supported by this JVM, falling back to a pool of platform threads" );
+            }
+        }
+
+        return createBoundedExecutor( THREAD_NAME_PREFIX, nPoolSize, nQueueSize );
+    }
+
+    /**
+     * Creates a bounded pool of platform daemon threads, which rejects the tasks when its queue is full
+     * 
+     * @param strThreadNamePrefix
+     *            the prefix of the names of the threads
+     * @param nPoolSize
+     *            the size of the pool
+     * @param nQueueSize
+     *            the size of the queue of the pool
+     * @return the executor
+     */
+    public static ExecutorService createBoundedExecutor( String strThreadNamePrefix, int nPoolSize, int nQueueSize )
+    {
+        AtomicInteger nThreadCount = new AtomicInteger( );
+        ThreadPoolExecutor executor = new ThreadPoolExecutor( nPoolSize, nPoolSize, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>( nQueueSize ),
+                runnable -> {
+                    Thread thread = new Thread( runnable, strThreadNamePrefix + nThreadCount.incrementAndGet( ) );
+                    thread.setDaemon( true );
+                    return thread;
+                } );
+        executor.allowCoreThreadTimeOut( true );
+        return executor;
+    }
+
+    /**
+     * Shuts down the executor when the webapp stops. The executor is kept, so that the tasks submitted afterwards are rejected
+     * instead of starting new threads.
+     */
+    public static synchronized void shutdown( )
+    {
+        if ( _executor != null )
+        {
+            shutdown( _executor );
+        }
+    }
+
+    /**
+     * Shuts down an executor, waiting a few seconds for the running tasks before interrupting them, so that its threads don't
+     * outlive the webapp
+     * 
+     * @param executor
+     *            the executor
+     */
+    public static void shutdown( ExecutorService executor )
+    {
+        executor.shutdown( );
+        try
+        {
+            if ( !executor.awaitTermination( SHUTDOWN_TIMEOUT, TimeUnit.SECONDS ) )
+            {
+                executor.shutdownNow( );
+            }
+        }
+        catch( InterruptedException e )
+        {
+            executor.shutdownNow( );
+            Thread.currentThread( ).interrupt( );
+        }
+    }
+
+    /**
+     * Creates an executor starting a virtual thread per task. The executor is looked up by reflection so that the plugin
+     * still runs on JVMs without virtual threads.
+     * 
+     * @return the executor or null if the JVM doesn't support virtual threads
+     */
+    private static ExecutorService newVirtualThreadExecutor( )
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod( METHOD_NEW_VIRTUAL_THREAD_EXECUTOR ).invoke( null );
+        }
+        catch( ReflectiveOperationException | RuntimeException e )
+        {
+            return null;
+        }
+    }
+}
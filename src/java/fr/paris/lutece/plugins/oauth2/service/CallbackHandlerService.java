@@ -33,11 +33,16 @@
  */
 package fr.paris.lutece.plugins.oauth2.service;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 
+import fr.paris.lutece.plugins.oauth2.business.Token;
 import fr.paris.lutece.plugins.oauth2.web.CallbackHandler;
 import fr.paris.lutece.plugins.oauth2.web.Constants;
 import fr.paris.lutece.portal.service.spring.SpringContextService;
@@ -51,8 +56,9 @@ import fr.paris.lutece.util.url.UrlItem;
 public class CallbackHandlerService
 {
 
-    private static CallbackHandlerService _singleton;
+    private static final CallbackHandlerService _singleton = new CallbackHandlerService( );
     private static Logger _logger = Logger.getLogger( Constants.LOGGER_OAUTH2 );
+    private volatile HandlerRegistry _registry;
 
     /** Private constructor */
     private CallbackHandlerService( )
@@ -64,13 +70,8 @@ public class CallbackHandlerService
      * 
      * @return The unique instance
      */
-    public static synchronized CallbackHandlerService instance( )
+    public static CallbackHandlerService instance( )
     {
-        if ( _singleton == null )
-        {
-            _singleton = new CallbackHandlerService( );
-        }
-
         return _singleton;
     }
 
@@ -83,28 +84,101 @@ public class CallbackHandlerService
      */
     public CallbackHandler getCallbackHandler( String name )
     {
-
+        HandlerRegistry registry = getRegistry( );
         CallbackHandler callbackHandler = null;
 
-        List<CallbackHandler> callBackList = SpringContextService.getBeansOfType( CallbackHandler.class );
-
-        if ( !StringUtils.isEmpty( name ) && callBackList.size( ) > 0 )
+        if ( !StringUtils.isEmpty( name ) )
         {
-
-            callbackHandler = callBackList.stream( ).filter( x -> name.equals( x.getHandlerName( ) ) ).findFirst( ).orElse( null );
-
+            callbackHandler = registry._mapHandlers.get( name );
         }
 
         // getDefaultHandler
         if ( callbackHandler == null )
         {
-
-            callbackHandler = callBackList.stream( ).filter( x -> x.isDefault( ) ).findFirst( ).orElse( callBackList.stream( ).findFirst( ).orElse( null ) );
-
+            callbackHandler = registry._defaultHandler;
         }
 
         return callbackHandler;
+    }
+
+    /**
+     * Gets the token kept in the token store of a handler for the session of the request, so that the data clients don't have to
+     * keep the tokens in the session
+     * 
+     * @param request
+     *            the HTTP request
+     * @param strHandlerName
+     *            the handler name, or null for the default handler
+     * @return the token, or null if the handler has no token store or no token for this session
+     * @since 2.0.1
+     */
+    public Token getStoredToken( HttpServletRequest request, String strHandlerName )
+    {
+        CallbackHandler callbackHandler = getCallbackHandler( strHandlerName );
+        return ( callbackHandler != null ) ? callbackHandler.getStoredToken( request ) : null;
+    }
 
+    /**
+     * Forget the handlers, so that they are read again from the Spring context on the next access
+     */
+    public void invalidate( )
+    {
+        _registry = null;
     }
 
+    /**
+     * Get the handler registry, built on first use
+     * 
+     * @return the registry
+     */
+    private HandlerRegistry getRegistry( )
+    {
+        HandlerRegistry registry = _registry;
+        if ( registry == null )
+        {
+            registry = new HandlerRegistry( SpringContextService.getBeansOfType( CallbackHandler.class ) );
+            _registry = registry;
+            _logger.debug( "CallbackHandlerService : " + registry._mapHandlers.size( ) + " named handlers registered" );
+        }
+        return registry;
+    }
+
+    /**
+     * Immutable index of the handlers
+     */
+    private static final class HandlerRegistry
+    {
+        private final Map<String, CallbackHandler> _mapHandlers;
+        private final CallbackHandler _defaultHandler;
+
+        /**
+         * Constructor
+         * 
+         * @param listHandlers
+         *            the handlers
+         */
+        HandlerRegistry( List<CallbackHandler> listHandlers )
+        {
+            Map<String, CallbackHandler> mapHandlers = new HashMap<>( );
+            CallbackHandler defaultHandler = null;
+            for ( CallbackHandler handler : listHandlers )
+            {
+                if ( handler.getHandlerName( ) != null )
+                {
+                    // the first handler declared with a name wins
+                    mapHandlers.putIfAbsent( handler.getHandlerName( ), handler );
+                }
+                if ( defaultHandler == null && handler.isDefault( ) )
+                {
+                    defaultHandler = handler;
+                }
+            }
+            if ( defaultHandler == null && !listHandlers.isEmpty( ) )
+            {
+                defaultHandler = listHandlers.get( 0 );
+            }
+            _mapHandlers = Map.copyOf( mapHandlers );
+            _defaultHandler = defaultHandler;
+        }
+    }
 }
@@ -33,8 +33,9 @@
  */
 package fr.paris.lutece.plugins.oauth2.service;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
@@ -46,6 +47,7 @@ import fr.paris.lutece.plugins.oauth2.dataclient.DataClient;
 import fr.paris.lutece.plugins.oauth2.web.Constants;
 import fr.paris.lutece.portal.service.spring.SpringContextService;
 import fr.paris.lutece.portal.service.util.AppPathService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
 import fr.paris.lutece.util.url.UrlItem;
 
 /**
@@ -53,9 +55,10 @@ import fr.paris.lutece.util.url.UrlItem;
  */
 public final class DataClientService
 {
-    private static DataClientService _singleton;
-    private static ConcurrentMap<String, DataClient> _mapClients;
+    private static final String PROPERTY_SESSIONLESS = "oauth2.dataClient.sessionless";
+    private static final DataClientService _singleton = new DataClientService( );
     private static Logger _logger = Logger.getLogger( Constants.LOGGER_OAUTH2 );
+    private volatile ClientRegistry _registry;
 
     /** Private constructor */
     private DataClientService( )
@@ -67,29 +70,64 @@ public final class DataClientService
      * 
      * @return The unique instance
      */
-    public static synchronized DataClientService instance( )
+    public static DataClientService instance( )
     {
-        if ( _singleton == null )
+        return _singleton;
+    }
+
+    /**
+     * Get the client registry, built from the Spring context on first use
+     * 
+     * @return the registry
+     */
+    private ClientRegistry getRegistry( )
+    {
+        ClientRegistry registry = _registry;
+        if ( registry == null )
         {
-            _singleton = new DataClientService( );
-            initClients( );
+            registry = initClients( );
         }
-
-        return _singleton;
+        return registry;
     }
 
     /**
      * Init clients
+     * 
+     * @return the registry
      */
-    private static void initClients( )
+    private synchronized ClientRegistry initClients( )
     {
-        _mapClients = new ConcurrentHashMap<>( );
-
-        for ( DataClient client : SpringContextService.getBeansOfType( DataClient.class ) )
+        if ( _registry == null )
         {
-            _mapClients.put( client.getName( ), client );
-            _logger.info( "New Oaut2 Data Client registered : " + client.getName( ) );
+            List<DataClient> listClients = SpringContextService.getBeansOfType( DataClient.class );
+            for ( DataClient client : listClients )
+            {
+                _logger.info( "New Oaut2 Data Client registered : " + client.getName( ) );
+            }
+            _registry = new ClientRegistry( listClients, AppPropertiesService.getPropertyBoolean( PROPERTY_SESSIONLESS, false ) );
         }
+        return _registry;
+    }
+
+    /**
+     * Register the clients, replacing the clients read from the Spring context
+     * 
+     * @param listClients
+     *            the clients
+     * @param bSessionless
+     *            true to resolve the clients without creating sessions
+     */
+    void setClients( List<DataClient> listClients, boolean bSessionless )
+    {
+        _registry = new ClientRegistry( listClients, bSessionless );
+    }
+
+    /**
+     * Forget the clients, so that they are read again from the Spring context on the next access
+     */
+    public void invalidate( )
+    {
+        _registry = null;
     }
 
     /**
@@ -101,18 +139,25 @@ public final class DataClientService
      */
     public DataClient getClient( String strName )
     {
-        return _mapClients.get( strName );
+        return getRegistry( )._mapClients.get( strName );
     }
 
     /**
-     * Gets a DataClient object for a given name
+     * Gets the DataClient of a request : the client named by the data_client parameter, or the client stored in the session, or
+     * the default client. In sessionless mode (oauth2.dataClient.sessionless property), no session is created and only the name
+     * of the client is stored, in an already existing session.
      * 
-     * @param strName
-     *            The Data Client name
+     * @param request
+     *            The HTTP request
      * @return The Data Client
      */
     public DataClient getClient( HttpServletRequest request )
     {
+        ClientRegistry registry = getRegistry( );
+        if ( registry._bSessionless )
+        {
+            return getClientWithoutSessionCreation( request );
+        }
 
         HttpSession session = request.getSession( true );
         DataClient dataClient = null;
@@ -123,9 +168,7 @@ public final class DataClientService
         }
         else
         {
-            session = request.getSession( true );
-            dataClient = (DataClient) session.getAttribute( Constants.SESSION_ATTRIBUTE_DATACLIENT );
-
+            dataClient = getSessionClient( session );
         }
         if ( dataClient != null )
         {
@@ -143,6 +186,52 @@ public final class DataClientService
         return dataClient;
     }
 
+    /**
+     * Gets the DataClient of a request without creating a session
+     * 
+     * @param request
+     *            The HTTP request
+     * @return The Data Client
+     */
+    private DataClient getClientWithoutSessionCreation( HttpServletRequest request )
+    {
+        HttpSession session = request.getSession( false );
+        DataClient dataClient = null;
+        String strDataClientName = request.getParameter( Constants.PARAMETER_DATA_CLIENT );
+        if ( !StringUtils.isEmpty( strDataClientName ) )
+        {
+            dataClient = getClient( strDataClientName );
+            if ( dataClient != null && session != null && !strDataClientName.equals( session.getAttribute( Constants.SESSION_ATTRIBUTE_DATACLIENT ) ) )
+            {
+                session.setAttribute( Constants.SESSION_ATTRIBUTE_DATACLIENT, strDataClientName );
+            }
+        }
+        else
+            if ( session != null )
+            {
+                dataClient = getSessionClient( session );
+            }
+
+        return ( dataClient != null ) ? dataClient : getDefaultClient( request );
+    }
+
+    /**
+     * Gets the DataClient stored in the session, either by name or as an object
+     * 
+     * @param session
+     *            The HTTP session
+     * @return The Data Client or null
+     */
+    private DataClient getSessionClient( HttpSession session )
+    {
+        Object dataClient = session.getAttribute( Constants.SESSION_ATTRIBUTE_DATACLIENT );
+        if ( dataClient instanceof String )
+        {
+            return getClient( (String) dataClient );
+        }
+        return (DataClient) dataClient;
+    }
+
     /**
      * Gets a DataClient object for a given name
      * 
@@ -152,10 +241,7 @@ public final class DataClientService
      */
     public DataClient getDefaultClient( HttpServletRequest request )
     {
-
-        return _mapClients.entrySet( ).stream( ).filter( x -> x.getValue( ).isDefault( ) ).map( x -> x.getValue( ) ).findFirst( )
-                .orElse( _mapClients.entrySet( ).stream( ).map( x -> x.getValue( ) ).findFirst( ).orElse( null ) );
-
+        return getRegistry( )._defaultClient;
     }
 
     /**
@@ -182,4 +268,45 @@ public final class DataClientService
         return url.getUrl( );
     }
 
+    /**
+     * Immutable index of the data clients
+     */
+    private static final class ClientRegistry
+    {
+        private final Map<String, DataClient> _mapClients;
+        private final DataClient _defaultClient;
+        private final boolean _bSessionless;
+
+        /**
+         * Constructor
+         * 
+         * @param listClients
+         *            the clients
+         * @param bSessionless
+         *            true to resolve the clients without creating sessions
+         */
+        ClientRegistry( List<DataClient> listClients, boolean bSessionless )
+        {
+            _bSessionless = bSessionless;
+            Map<String, DataClient> mapClients = new HashMap<>( );
+            DataClient defaultClient = null;
+            for ( DataClient client : listClients )
+            {
+                if ( client.getName( ) != null )
+                {
+                    mapClients.put( client.getName( ), client );
+                }
+                if ( defaultClient == null && client.isDefault( ) )
+                {
+                    defaultClient = client;
+                }
+            }
+            if ( defaultClient == null && !listClients.isEmpty( ) )
+            {
+                defaultClient = listClients.get( 0 );
+            }
+            _mapClients = Map.copyOf( mapClients );
+            _defaultClient = defaultClient;
+        }
+    }
 }
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.service;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In memory cache with a bounded size, a time to live for each entry and a least recently used eviction policy. The expired
+ * entries are removed when they are read, and by a scan of the whole cache made at most once every tenth of the maximum size
+ * insertions in a full cache, so that the cost of the scan is amortized over the insertions.
+ * 
+ * @param <K>
+ *            the type of the keys
+ * @param <V>
+ *            the type of the values
+ * @since 2.0.1
+ */
+public class ExpiringCache<K, V>
+{
+    private static final int CLEANUP_RATIO = 10;
+
+    private final int _nMaxSize;
+    private final int _nCleanupInterval;
+    private int _nPutsSinceCleanup;
+    private final Map<K, CacheEntry<V>> _mapEntries;
+    private final AtomicLong _lHits = new AtomicLong( );
+    private final AtomicLong _lMisses = new AtomicLong( );
+    private final AtomicLong _lEvictions = new AtomicLong( );
+    private final AtomicLong _lCleanups = new AtomicLong( );
+
+    /**
+     * Constructor
+     * 
+     * @param nMaxSize
+     *            the maximum number of entries
+     */
+    public ExpiringCache( int nMaxSize )
+    {
+        _nMaxSize = nMaxSize;
+        _nCleanupInterval = Math.max( 1, nMaxSize / CLEANUP_RATIO );
+        _mapEntries = new LinkedHashMap<K, CacheEntry<V>>( 16, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<K, CacheEntry<V>> eldest )
+            {
+                if ( size( ) > _nMaxSize )
+                {
+                    _lEvictions.incrementAndGet( );
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets a value
+     * 
+     * @param key
+     *            the key
+     * @return the value, or <code>null</code> if there is no value for this key or if it is expired
+     */
+    public V get( K key )
+    {
+        synchronized( _mapEntries )
+        {
+            CacheEntry<V> entry = _mapEntries.get( key );
+            if ( entry != null && entry.isExpired( ) )
+            {
+                _mapEntries.remove( key );
+                entry = null;
+            }
+            return getValue( entry );
+        }
+    }
+
+    /**
+     * Removes and gets a value
+     * 
+     * @param key
+     *            the key
+     * @return the value, or <code>null</code> if there is no value for this key or if it is expired
+     */
+    public V take( K key )
+    {
+        synchronized( _mapEntries )
+        {
+            CacheEntry<V> entry = _mapEntries.remove( key );
+            if ( entry != null && entry.isExpired( ) )
+            {
+                entry = null;
+            }
+            return getValue( entry );
+        }
+    }
+
+    /**
+     * Puts a value
+     * 
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @param expiration
+     *            the expiration time of the value
+     */
+    public void put( K key, V value, Instant expiration )
+    {
+        synchronized( _mapEntries )
+        {
+            if ( _mapEntries.size( ) >= _nMaxSize && ++_nPutsSinceCleanup >= _nCleanupInterval )
+            {
+                // otherwise the least recently used entry is evicted
+                _nPutsSinceCleanup = 0;
+                removeExpiredEntries( );
+            }
+            _mapEntries.put( key, new CacheEntry<>( value, expiration.toEpochMilli( ) ) );
+        }
+    }
+
+    /**
+     * Removes a value
+     * 
+     * @param key
+     *            the key
+     */
+    public void remove( K key )
+    {
+        synchronized( _mapEntries )
+        {
+            _mapEntries.remove( key );
+        }
+    }
+
+    /**
+     * Removes all the values
+     */
+    public void clear( )
+    {
+        synchronized( _mapEntries )
+        {
+            _mapEntries.clear( );
+        }
+    }
+
+    /**
+     * Gets the number of entries, including the expired entries not removed yet
+     * 
+     * @return the number of entries
+     */
+    public int size( )
+    {
+        synchronized( _mapEntries )
+        {
+            return _mapEntries.size( );
+        }
+    }
+
+    /**
+     * Gets the number of lookups that found a value
+     * 
+     * @return the number of hits
+     */
+    public long getHitCount( )
+    {
+        return _lHits.get( );
+    }
+
+    /**
+     * Gets the number of lookups that didn't find a value
+     * 
+     * @return the number of misses
+     */
+    public long getMissCount( )
+    {
+        return _lMisses.get( );
+    }
+
+    /**
+     * Gets the number of entries removed to respect the maximum size
+     * 
+     * @return the number of evictions
+     */
+    public long getEvictionCount( )
+    {
+        return _lEvictions.get( );
+    }
+
+    /**
+     * Gets the number of scans made to remove the expired entries
+     * 
+     * @return the number of scans
+     */
+    public long getCleanupCount( )
+    {
+        return _lCleanups.get( );
+    }
+
+    /**
+     * Gets the ratio of lookups that found a value
+     * 
+     * @return the hit ratio, between 0 and 1
+     */
+    public double getHitRatio( )
+    {
+        long lHits = _lHits.get( );
+        long lLookups = lHits + _lMisses.get( );
+        return lLookups == 0 ? 0d : (double) lHits / lLookups;
+    }
+
+    /**
+     * Gets the value of an entry and update the statistics
+     * 
+     * @param entry
+     *            the entry
+     * @return the value
+     */
+    private V getValue( CacheEntry<V> entry )
+    {
+        if ( entry == null )
+        {
+            _lMisses.incrementAndGet( );
+            return null;
+        }
+        _lHits.incrementAndGet( );
+        return entry._value;
+    }
+
+    /**
+     * Removes the expired entries
+     */
+    private void removeExpiredEntries( )
+    {
+        _lCleanups.incrementAndGet( );
+        Iterator<CacheEntry<V>> iterator = _mapEntries.values( ).iterator( );
+        while ( iterator.hasNext( ) )
+        {
+            if ( iterator.next( ).isExpired( ) )
+            {
+                iterator.remove( );
+            }
+        }
+    }
+
+    /**
+     * Cache entry
+     * 
+     * @param <T>
+     *            the type of the value
+     */
+    private static final class CacheEntry<T>
+    {
+        private final T _value;
+        private final long _lExpirationTime;
+
+        CacheEntry( T value, long lExpirationTime )
+        {
+            _value = value;
+            _lExpirationTime = lExpirationTime;
+        }
+
+        boolean isExpired( )
+        {
+            return System.currentTimeMillis( ) >= _lExpirationTime;
+        }
+    }
+}
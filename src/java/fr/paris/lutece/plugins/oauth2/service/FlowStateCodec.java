@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import fr.paris.lutece.plugins.oauth2.business.FlowState;
+import fr.paris.lutece.plugins.oauth2.web.Constants;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Seals the values of an authorization flow in a compact token, encrypted and authenticated with AES-GCM, so that the callback
+ * can be completed by any node of a cluster without session lookup. The key is derived from the oauth2.flowState.secret
+ * property, which must be the same on all the nodes.
+ * 
+ * @since 2.0.1
+ */
+public final class FlowStateCodec
+{
+    private static final String PROPERTY_SECRET = "oauth2.flowState.secret";
+    private static final String PROPERTY_TTL = "oauth2.flowState.ttl";
+    private static final long DEFAULT_TTL = 600;
+    private static final String KEY_ALGORITHM = "AES";
+    private static final String CIPHER_ALGORITHM = "AES/GCM/NoPadding";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 128;
+    private static final int SECRET_LENGTH = 32;
+    private static final byte VERSION = 2;
+    private static final long CLOCK_SKEW = 60000L;
+    private static Logger _logger = Logger.getLogger( Constants.LOGGER_OAUTH2 );
+    private static FlowStateCodec _singleton;
+
+    private final SecureRandom _random = new SecureRandom( );
+    private final SecretKeySpec _key;
+    private final long _lTtl;
+
+    /**
+     * Constructor
+     * 
+     * @param secret
+     *            the secret from which the encryption key is derived
+     * @param lTtl
+     *            the time to live of the sealed flow states in seconds
+     */
+    public FlowStateCodec( byte [ ] secret, long lTtl )
+    {
+        try
+        {
+            _key = new SecretKeySpec( MessageDigest.getInstance( DIGEST_ALGORITHM ).digest( secret ), KEY_ALGORITHM );
+        }
+        catch( GeneralSecurityException e )
+        {
+            throw new AppException( e.getMessage( ), e );
+        }
+        _lTtl = lTtl;
+    }
+
+    /**
+     * Get the instance configured by the oauth2.flowState.* properties
+     * 
+     * @return the instance
+     */
+    public static synchronized FlowStateCodec instance( )
+    {
+        if ( _singleton == null )
+        {
+            String strSecret = AppPropertiesService.getProperty( PROPERTY_SECRET );
+            byte [ ] secret;
+            if ( StringUtils.isBlank( strSecret ) )
+            {
+                _logger.warn( "No " + PROPERTY_SECRET + " property : the authorization flows can only be completed by this node" );
+                secret = new byte [ SECRET_LENGTH];
+                new SecureRandom( ).nextBytes( secret );
+            }
+            else
+            {
+                secret = strSecret.getBytes( StandardCharsets.UTF_8 );
+            }
+            _singleton = new FlowStateCodec( secret, AppPropertiesService.getPropertyLong( PROPERTY_TTL, DEFAULT_TTL ) );
+        }
+        return _singleton;
+    }
+
+    /**
+     * @return the time to live of the sealed flow states in seconds
+     */
+    public long getTtl( )
+    {
+        return _lTtl;
+    }
+
+    /**
+     * Seal a flow state
+     * 
+     * @param flowState
+     *            the flow state
+     * @return the sealed flow state, base64url encoded
+     */
+    public String seal( FlowState flowState )
+    {
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream( );
+            DataOutputStream data = new DataOutputStream( out );
+            data.writeLong( flowState.getCreationTime( ) );
+            writeString( data, flowState.getState( ) );
+            writeString( data, flowState.getNonce( ) );
+            writeString( data, flowState.getCodeVerifier( ) );
+            writeString( data, flowState.getDataClientName( ) );
+            writeString( data, flowState.getHandlerName( ) );
+            writeString( data, flowState.getBinding( ) );
+            data.flush( );
+
+            byte [ ] iv = new byte [ IV_LENGTH];
+            _random.nextBytes( iv );
+            Cipher cipher = Cipher.getInstance( CIPHER_ALGORITHM );
+            cipher.init( Cipher.ENCRYPT_MODE, _key, new GCMParameterSpec( TAG_LENGTH, iv ) );
+            cipher.updateAAD( new byte [ ] {
+                    VERSION
+            } );
+            byte [ ] encrypted = cipher.doFinal( out.toByteArray( ) );
+
+            ByteBuffer sealed = ByteBuffer.allocate( 1 + IV_LENGTH + encrypted.length );
+            sealed.put( VERSION ).put( iv ).put( encrypted );
+            return Base64.getUrlEncoder( ).withoutPadding( ).encodeToString( sealed.array( ) );
+        }
+        catch( IOException | GeneralSecurityException e )
+        {
+            throw new AppException( "Unable to seal the flow state : " + e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Open a sealed flow state
+     * 
+     * @param strSealed
+     *            the sealed flow state
+     * @return the flow state, or null if the sealed flow state is invalid, has been tampered with or has expired
+     */
+    public FlowState open( String strSealed )
+    {
+        try
+        {
+            byte [ ] sealed = Base64.getUrlDecoder( ).decode( strSealed );
+            if ( sealed.length <= 1 + IV_LENGTH || sealed [0] != VERSION )
+            {
+                _logger.debug( "Invalid sealed flow state" );
+                return null;
+            }
+            Cipher cipher = Cipher.getInstance( CIPHER_ALGORITHM );
+            cipher.init( Cipher.DECRYPT_MODE, _key, new GCMParameterSpec( TAG_LENGTH, sealed, 1, IV_LENGTH ) );
+            cipher.updateAAD( sealed, 0, 1 );
+            byte [ ] decrypted = cipher.doFinal( sealed, 1 + IV_LENGTH, sealed.length - 1 - IV_LENGTH );
+
+            DataInputStream data = new DataInputStream( new ByteArrayInputStream( decrypted ) );
+            FlowState flowState = new FlowState( );
+            flowState.setCreationTime( data.readLong( ) );
+            flowState.setState( readString( data ) );
+            flowState.setNonce( readString( data ) );
+            flowState.setCodeVerifier( readString( data ) );
+            flowState.setDataClientName( readString( data ) );
+            flowState.setHandlerName( readString( data ) );
+            flowState.setBinding( readString( data ) );
+
+            long lAge = System.currentTimeMillis( ) - flowState.getCreationTime( );
+            if ( lAge > _lTtl * 1000L || lAge < -CLOCK_SKEW )
+            {
+                _logger.debug( "Expired sealed flow state" );
+                return null;
+            }
+            return flowState;
+        }
+        catch( IllegalArgumentException | IOException | GeneralSecurityException e )
+        {
+            _logger.debug( "Invalid sealed flow state : " + e.getMessage( ) );
+            return null;
+        }
+    }
+
+    /**
+     * Write a nullable string
+     * 
+     * @param data
+     *            the output
+     * @param strValue
+     *            the value
+     * @throws IOException
+     *             if an error occurs
+     */
+    private static void writeString( DataOutputStream data, String strValue ) throws IOException
+    {
+        data.writeBoolean( strValue != null );
+        if ( strValue != null )
+        {
+            data.writeUTF( strValue );
+        }
+    }
+
+    /**
+     * Read a nullable string
+     * 
+     * @param data
+     *            the input
+     * @return the value
+     * @throws IOException
+     *             if an error occurs
+     */
+    private static String readString( DataInputStream data ) throws IOException
+    {
+        return data.readBoolean( ) ? data.readUTF( ) : null;
+    }
+}
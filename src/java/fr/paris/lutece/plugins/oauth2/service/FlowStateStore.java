@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.service;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import fr.paris.lutece.plugins.oauth2.business.FlowState;
+
+/**
+ * Store of the values of the authorization flows (state, nonce, PKCE code verifier, ...) kept between the authorization request
+ * and the callback. The values are taken once by the callback. Implementations (session, memory, sealed cookie, file or shared
+ * backend, ...) must be thread safe.
+ * 
+ * @since 2.0.1
+ */
+public interface FlowStateStore
+{
+    /**
+     * Stores the values of an authorization flow
+     * 
+     * @param request
+     *            the HTTP request of the authorization request
+     * @param response
+     *            the HTTP response of the authorization request
+     * @param flowState
+     *            the flow state
+     * @return the value of the state parameter of the authorization request
+     */
+    String put( HttpServletRequest request, HttpServletResponse response, FlowState flowState );
+
+    /**
+     * Takes the values of an authorization flow : they can't be taken a second time. A state that doesn't match leaves the
+     * pending flow untouched, so that a forged callback can't cancel a legitimate login.
+     * 
+     * @param request
+     *            the HTTP request of the callback
+     * @param response
+     *            the HTTP response of the callback
+     * @param strHandlerName
+     *            the name of the callback handler, may be null
+     * @param strState
+     *            the state parameter returned to the callback
+     * @return the flow state or null if there is no flow state for this state, or if it has expired
+     */
+    FlowState take( HttpServletRequest request, HttpServletResponse response, String strHandlerName, String strState );
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.service;
+
+import java.time.Instant;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import fr.paris.lutece.plugins.oauth2.business.FlowState;
+
+/**
+ * In memory flow state store. The number of flow states is bounded : the least recently used flow states are evicted first,
+ * and a flow state is removed once it has expired or once it has been taken, so that the abandoned logins don't pin memory. The
+ * flow states are bound to the browser by a random cookie : a state returned to the callback by another browser is rejected.
+ * <p>
+ * The flow states are local to the node, so this store is opt-in : on a cluster it requires sticky sessions, otherwise the
+ * {@link SessionFlowStateStore} (default) or the {@link SealedFlowStateStore} should be used.
+ * 
+ * @since 2.0.1
+ */
+public class InMemoryFlowStateStore implements FlowStateStore
+{
+    private static final int DEFAULT_MAX_SIZE = 10000;
+    private static final long DEFAULT_TTL = 600L;
+
+    private volatile ExpiringCache<String, FlowState> _cache = new ExpiringCache<>( DEFAULT_MAX_SIZE );
+    private long _lTtl = DEFAULT_TTL;
+
+    /**
+     * Sets the maximum number of flow states. The flow states already stored are dropped.
+     * 
+     * @param nMaxSize
+     *            the maximum number of flow states
+     */
+    public void setMaxSize( int nMaxSize )
+    {
+        _cache = new ExpiringCache<>( nMaxSize );
+    }
+
+    /**
+     * Sets the time to live of the flow states
+     * 
+     * @param lTtl
+     *            the time to live in seconds
+     */
+    public void setTtl( long lTtl )
+    {
+        _lTtl = lTtl;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public String put( HttpServletRequest request, HttpServletResponse response, FlowState flowState )
+    {
+        String strBinding = OauthUtils.createBrowserBinding( request, response );
+        _cache.put( getKey( strBinding, flowState.getHandlerName( ), flowState.getState( ) ), flowState, Instant.now( ).plusSeconds( _lTtl ) );
+
+        return flowState.getState( );
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public FlowState take( HttpServletRequest request, HttpServletResponse response, String strHandlerName, String strState )
+    {
+        String strBinding = OauthUtils.getBrowserBinding( request );
+        if ( strBinding == null || strState == null )
+        {
+            return null;
+        }
+        return _cache.take( getKey( strBinding, strHandlerName, strState ) );
+    }
+
+    /**
+     * Gets the number of stored flow states
+     * 
+     * @return the number of flow states
+     */
+    public int getSize( )
+    {
+        return _cache.size( );
+    }
+
+    /**
+     * Gets the number of flow states evicted because the store was full
+     * 
+     * @return the number of evictions
+     */
+    public long getEvictionCount( )
+    {
+        return _cache.getEvictionCount( );
+    }
+
+    /**
+     * Gets the key of a flow state
+     * 
+     * @param strBinding
+     *            the browser binding
+     * @param strHandlerName
+     *            the handler name
+     * @param strState
+     *            the state
+     * @return the key
+     */
+    private static String getKey( String strBinding, String strHandlerName, String strState )
+    {
+        return OauthUtils.digest( strBinding, strHandlerName, strState );
+    }
+}
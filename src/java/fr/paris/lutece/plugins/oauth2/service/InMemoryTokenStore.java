@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.service;
+
+import java.time.Instant;
+
+import org.apache.commons.lang3.StringUtils;
+
+import fr.paris.lutece.plugins.oauth2.business.Token;
+
+/**
+ * In memory token store. The number of tokens is bounded : the least recently used tokens are evicted first. A token is
+ * removed once it has expired, or once its refresh token is considered expired if it has one.
+ * 
+ * @since 2.0.1
+ */
+public class InMemoryTokenStore implements TokenStore
+{
+    private static final int DEFAULT_MAX_SIZE = 10000;
+    private static final long DEFAULT_TTL = 3600L;
+    private static final long DEFAULT_REFRESH_TOKEN_TTL = 86400L;
+
+    private volatile ExpiringCache<String, Token> _cache = new ExpiringCache<>( DEFAULT_MAX_SIZE );
+    private long _lDefaultTtl = DEFAULT_TTL;
+    private long _lRefreshTokenTtl = DEFAULT_REFRESH_TOKEN_TTL;
+
+    /**
+     * Sets the maximum number of tokens. The tokens already stored are dropped.
+     * 
+     * @param nMaxSize
+     *            the maximum number of tokens
+     */
+    public void setMaxSize( int nMaxSize )
+    {
+        _cache = new ExpiringCache<>( nMaxSize );
+    }
+
+    /**
+     * Sets the time to live of the tokens without expiration
+     * 
+     * @param lDefaultTtl
+     *            the time to live in seconds
+     */
+    public void setDefaultTtl( long lDefaultTtl )
+    {
+        _lDefaultTtl = lDefaultTtl;
+    }
+
+    /**
+     * Sets the time during which a token with a refresh token is kept, so that it can be refreshed after the expiration of the
+     * access token
+     * 
+     * @param lRefreshTokenTtl
+     *            the time to live in seconds
+     */
+    public void setRefreshTokenTtl( long lRefreshTokenTtl )
+    {
+        _lRefreshTokenTtl = lRefreshTokenTtl;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void put( String strKey, Token token )
+    {
+        _cache.put( strKey, token, getExpiration( token ) );
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public Token get( String strKey )
+    {
+        return _cache.get( strKey );
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void remove( String strKey )
+    {
+        _cache.remove( strKey );
+    }
+
+    /**
+     * Gets the number of stored tokens
+     * 
+     * @return the number of tokens
+     */
+    public int getSize( )
+    {
+        return _cache.size( );
+    }
+
+    /**
+     * Gets the number of lookups which found a token
+     * 
+     * @return the number of hits
+     */
+    public long getHitCount( )
+    {
+        return _cache.getHitCount( );
+    }
+
+    /**
+     * Gets the number of lookups which found no token
+     * 
+     * @return the number of misses
+     */
+    public long getMissCount( )
+    {
+        return _cache.getMissCount( );
+    }
+
+    /**
+     * Gets the number of tokens evicted because the store was full
+     * 
+     * @return the number of evictions
+     */
+    public long getEvictionCount( )
+    {
+        return _cache.getEvictionCount( );
+    }
+
+    /**
+     * Gets the ratio of lookups which found a token
+     * 
+     * @return the hit ratio, between 0 and 1
+     */
+    public double getHitRatio( )
+    {
+        return _cache.getHitRatio( );
+    }
+
+    /**
+     * Gets the expiration of a token in the store
+     * 
+     * @param token
+     *            the token
+     * @return the expiration
+     */
+    private Instant getExpiration( Token token )
+    {
+        Instant creationTime = token.getCreationTime( );
+        if ( StringUtils.isNotEmpty( token.getRefreshToken( ) ) )
+        {
+            return creationTime.plusSeconds( Math.max( token.getExpiresIn( ), _lRefreshTokenTtl ) );
+        }
+        return creationTime.plusSeconds( token.getExpiresIn( ) > 0 ? token.getExpiresIn( ) : _lDefaultTtl );
+    }
+}
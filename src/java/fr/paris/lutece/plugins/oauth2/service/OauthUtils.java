@@ -33,10 +33,29 @@
  */
 package fr.paris.lutece.plugins.oauth2.service;
 
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
 import java.util.Map;
 
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+
+import fr.paris.lutece.portal.service.util.AppException;
+
 public class OauthUtils
 {
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final char SEPARATOR = '|';
+    private static final String HEADER_SET_COOKIE = "Set-Cookie";
+    private static final String BINDING_COOKIE_NAME = "oauth2_flow_binding";
+    private static final SecureRandom _random = new SecureRandom( );
 
     /**
      * Utils to trace map content
@@ -56,4 +75,127 @@ public class OauthUtils
 
         return sbTrace.toString( );
     }
+
+    /**
+     * Digest of values, used as cache key so that tokens are not kept in clear in the caches
+     * 
+     * @param values
+     *            The values
+     * @return The base64 encoded SHA-256 digest of the values
+     * @since 2.0.1
+     */
+    public static String digest( String... values )
+    {
+        StringBuilder sbValues = new StringBuilder( );
+        for ( String strValue : values )
+        {
+            sbValues.append( strValue ).append( SEPARATOR );
+        }
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance( DIGEST_ALGORITHM );
+            return Base64.getEncoder( ).encodeToString( digest.digest( sbValues.toString( ).getBytes( StandardCharsets.UTF_8 ) ) );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new AppException( e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Gets the value of a cookie
+     * 
+     * @param request
+     *            The HTTP request
+     * @param strName
+     *            The cookie name
+     * @return The value or null if the request has no such cookie or if it is empty
+     * @since 2.0.1
+     */
+    public static String getCookieValue( HttpServletRequest request, String strName )
+    {
+        Cookie [ ] cookies = request.getCookies( );
+        if ( cookies != null )
+        {
+            for ( Cookie cookie : cookies )
+            {
+                if ( strName.equals( cookie.getName( ) ) && !StringUtils.isEmpty( cookie.getValue( ) ) )
+                {
+                    return cookie.getValue( );
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the random value binding the authorization flows to the browser
+     * 
+     * @param request
+     *            The HTTP request
+     * @return The value or null if the browser has no binding cookie
+     * @since 2.0.1
+     */
+    public static String getBrowserBinding( HttpServletRequest request )
+    {
+        return getCookieValue( request, BINDING_COOKIE_NAME );
+    }
+
+    /**
+     * Gets the random value binding the authorization flows to the browser, and creates its cookie if the browser has none. The
+     * cookie is removed when the browser is closed.
+     * 
+     * @param request
+     *            The HTTP request
+     * @param response
+     *            The HTTP response
+     * @return The value
+     * @since 2.0.1
+     */
+    public static String createBrowserBinding( HttpServletRequest request, HttpServletResponse response )
+    {
+        String strBinding = getBrowserBinding( request );
+        if ( strBinding == null )
+        {
+            strBinding = new BigInteger( 128, _random ).toString( 16 );
+            addCookie( request, response, BINDING_COOKIE_NAME, strBinding, -1 );
+        }
+        return strBinding;
+    }
+
+    /**
+     * Adds an HttpOnly cookie restricted to the context path. The header is written directly since the servlet API doesn't
+     * support the SameSite attribute : Lax lets the cookie follow the top level redirection of the authorization server to the
+     * callback.
+     * 
+     * @param request
+     *            The HTTP request
+     * @param response
+     *            The HTTP response
+     * @param strName
+     *            The cookie name
+     * @param strValue
+     *            The cookie value
+     * @param lMaxAge
+     *            The max age of the cookie in seconds, 0 to remove the cookie, negative for a cookie removed when the browser is
+     *            closed
+     * @since 2.0.1
+     */
+    public static void addCookie( HttpServletRequest request, HttpServletResponse response, String strName, String strValue, long lMaxAge )
+    {
+        String strPath = StringUtils.isEmpty( request.getContextPath( ) ) ? "/" : request.getContextPath( );
+        StringBuilder sbCookie = new StringBuilder( );
+        sbCookie.append( strName ).append( '=' ).append( strValue );
+        if ( lMaxAge >= 0 )
+        {
+            sbCookie.append( "; Max-Age=" ).append( lMaxAge );
+        }
+        sbCookie.append( "; Path=" ).append( strPath );
+        sbCookie.append( "; HttpOnly; SameSite=Lax" );
+        if ( request.isSecure( ) )
+        {
+            sbCookie.append( "; Secure" );
+        }
+        response.addHeader( HEADER_SET_COOKIE, sbCookie.toString( ) );
+    }
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.util.httpaccess.HttpAccessService;
+import fr.paris.lutece.util.httpaccess.PropertiesHttpClientConfiguration;
+
+/**
+ * HttpAccessService using a pool of persistent connections, shared by all the calls made to the authorization servers
+ * 
+ * @since 2.0.1
+ */
+public class PooledHttpAccessService extends HttpAccessService
+{
+    private static final String PROPERTY_POOL_MAX_TOTAL = "oauth2.httpClient.pool.maxTotal";
+    private static final String PROPERTY_POOL_MAX_PER_HOST = "oauth2.httpClient.pool.maxPerHost";
+    private static final String PROPERTY_CONNECT_TIMEOUT = "oauth2.httpClient.connectTimeout";
+    private static final String PROPERTY_READ_TIMEOUT = "oauth2.httpClient.readTimeout";
+    private static final String PROPERTY_KEEP_ALIVE = "oauth2.httpClient.keepAlive";
+    private static final int DEFAULT_POOL_MAX_TOTAL = 50;
+    private static final int DEFAULT_POOL_MAX_PER_HOST = 20;
+    private static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+    private static final int DEFAULT_READ_TIMEOUT = 10000;
+    private static final int DEFAULT_KEEP_ALIVE = 60;
+
+    private PoolingHttpClientConnectionManager _connectionManager;
+
+    /**
+     * Constructor
+     */
+    public PooledHttpAccessService( )
+    {
+        super( new PropertiesHttpClientConfiguration( ) );
+    }
+
+    @Override
+    protected HttpClientBuilder getHttpClientBuilder( )
+    {
+        int nKeepAlive = AppPropertiesService.getPropertyInt( PROPERTY_KEEP_ALIVE, DEFAULT_KEEP_ALIVE );
+        RequestConfig requestConfig = RequestConfig.custom( ).setConnectionKeepAlive( TimeValue.ofSeconds( nKeepAlive ) )
+                .setResponseTimeout( Timeout.ofMilliseconds( AppPropertiesService.getPropertyInt( PROPERTY_READ_TIMEOUT, DEFAULT_READ_TIMEOUT ) ) )
+                .build( );
+
+        return HttpClientBuilder.create( ).setConnectionManager( getConnectionManager( ) ).setConnectionManagerShared( true )
+                .setDefaultRequestConfig( requestConfig ).evictIdleConnections( TimeValue.ofSeconds( nKeepAlive ) );
+    }
+
+    /**
+     * Get the connection manager, created on first use
+     * 
+     * @return the connection manager
+     */
+    private synchronized PoolingHttpClientConnectionManager getConnectionManager( )
+    {
+        if ( _connectionManager == null )
+        {
+            ConnectionConfig connectionConfig = ConnectionConfig.custom( )
+                    .setConnectTimeout( Timeout.ofMilliseconds( AppPropertiesService.getPropertyInt( PROPERTY_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT ) ) )
+                    .setSocketTimeout( Timeout.ofMilliseconds( AppPropertiesService.getPropertyInt( PROPERTY_READ_TIMEOUT, DEFAULT_READ_TIMEOUT ) ) )
+                    .build( );
+
+            _connectionManager = PoolingHttpClientConnectionManagerBuilder.create( )
+                    .setMaxConnTotal( AppPropertiesService.getPropertyInt( PROPERTY_POOL_MAX_TOTAL, DEFAULT_POOL_MAX_TOTAL ) )
+                    .setMaxConnPerRoute( AppPropertiesService.getPropertyInt( PROPERTY_POOL_MAX_PER_HOST, DEFAULT_POOL_MAX_PER_HOST ) )
+                    .setDefaultConnectionConfig( connectionConfig ).build( );
+        }
+        return _connectionManager;
+    }
+
+    /**
+     * Closes the connections of the pool when the webapp stops
+     */
+    public synchronized void shutdown( )
+    {
+        if ( _connectionManager != null )
+        {
+            _connectionManager.close( CloseMode.GRACEFUL );
+            _connectionManager = null;
+        }
+    }
+
+    /**
+     * Gets the statistics of the whole connection pool
+     * 
+     * @return the pool statistics (leased, available, pending and max connections)
+     */
+    public PoolStats getPoolStats( )
+    {
+        return getConnectionManager( ).getTotalStats( );
+    }
+
+    /**
+     * Gets the statistics of the connection pool for each host
+     * 
+     * @return the pool statistics by host
+     */
+    public Map<String, PoolStats> getPoolStatsByHost( )
+    {
+        PoolingHttpClientConnectionManager connectionManager = getConnectionManager( );
+        Map<String, PoolStats> mapStats = new HashMap<>( );
+        for ( HttpRoute route : connectionManager.getRoutes( ) )
+        {
+            mapStats.put( route.getTargetHost( ).toURI( ), connectionManager.getStats( route ) );
+        }
+        return mapStats;
+    }
+}
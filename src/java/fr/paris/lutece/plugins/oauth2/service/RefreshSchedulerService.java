@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.service;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduler used to refresh in background the data fetched from the authorization servers (discovery documents, keys, ...)
+ * 
+ * @since 2.0.1
+ */
+public final class RefreshSchedulerService
+{
+    private static final String THREAD_NAME = "oauth2-refresh-scheduler";
+
+    private static final ScheduledExecutorService _scheduler = Executors.newSingleThreadScheduledExecutor( runnable -> {
+        Thread thread = new Thread( runnable, THREAD_NAME );
+        thread.setDaemon( true );
+        return thread;
+    } );
+
+    /** Private constructor */
+    private RefreshSchedulerService( )
+    {
+    }
+
+    /**
+     * Schedule a task. The scheduler thread only keeps the time : the task itself runs on the {@link AsyncExecutorService}
+     * so that a slow authorization server doesn't delay the other refreshes.
+     * 
+     * @param task
+     *            the task
+     * @param lDelay
+     *            the delay before the execution of the task
+     * @param unit
+     *            the time unit of the delay
+     * @return the scheduled task
+     */
+    public static ScheduledFuture<?> schedule( Runnable task, long lDelay, TimeUnit unit )
+    {
+        return _scheduler.schedule( ( ) -> execute( task ), lDelay, unit );
+    }
+
+    /**
+     * Shuts down the scheduler when the webapp stops. The pending refreshes are dropped.
+     */
+    public static void shutdown( )
+    {
+        _scheduler.shutdownNow( );
+    }
+
+    /**
+     * Run a task on the {@link AsyncExecutorService}, or on the scheduler thread if the executor is saturated
+     * 
+     * @param task
+     *            the task
+     */
+    private static void execute( Runnable task )
+    {
+        try
+        {
+            AsyncExecutorService.getExecutor( ).execute( task );
+        }
+        catch( RejectedExecutionException e )
+        {
+            task.run( );
+        }
+    }
+}
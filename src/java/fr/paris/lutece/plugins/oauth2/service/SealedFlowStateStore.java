@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.service;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+
+import fr.paris.lutece.plugins.oauth2.business.FlowState;
+
+/**
+ * Stateless flow state store : the flow states are sealed by the {@link FlowStateCodec}, so that any node of a cluster can
+ * complete a login without session lookup. By default the sealed flow state is carried by a short lived cookie bound to the
+ * browser, and cleared by the callback. Otherwise it is the state parameter itself : it then holds the digest of a random
+ * browser cookie, so that a state issued to another browser is rejected (login CSRF), but it can be replayed by the same browser
+ * until it expires.
+ * 
+ * @since 2.0.1
+ */
+public class SealedFlowStateStore implements FlowStateStore
+{
+    private static final String COOKIE_NAME = "oauth2_flow";
+
+    private boolean _bCookie = true;
+
+    /**
+     * Sets the transport of the sealed flow states
+     * 
+     * @param bCookie
+     *            true to carry the sealed flow states in a cookie (default), false to use them as the state parameter, bound to the
+     *            browser by a random cookie
+     */
+    public void setCookie( boolean bCookie )
+    {
+        _bCookie = bCookie;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public String put( HttpServletRequest request, HttpServletResponse response, FlowState flowState )
+    {
+        FlowStateCodec codec = FlowStateCodec.instance( );
+        if ( !_bCookie )
+        {
+            flowState.setBinding( OauthUtils.digest( OauthUtils.createBrowserBinding( request, response ) ) );
+            return codec.seal( flowState );
+        }
+        String strSealed = codec.seal( flowState );
+        OauthUtils.addCookie( request, response, getCookieName( flowState.getHandlerName( ) ), strSealed, codec.getTtl( ) );
+
+        return flowState.getState( );
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public FlowState take( HttpServletRequest request, HttpServletResponse response, String strHandlerName, String strState )
+    {
+        if ( !_bCookie )
+        {
+            String strBinding = OauthUtils.getBrowserBinding( request );
+            if ( strBinding == null || strState == null )
+            {
+                return null;
+            }
+            FlowState flowState = FlowStateCodec.instance( ).open( strState );
+
+            return ( flowState != null && OauthUtils.digest( strBinding ).equals( flowState.getBinding( ) ) ) ? flowState : null;
+        }
+
+        String strCookieName = getCookieName( strHandlerName );
+        String strSealed = OauthUtils.getCookieValue( request, strCookieName );
+        if ( strSealed == null || strState == null )
+        {
+            return null;
+        }
+
+        FlowState flowState = FlowStateCodec.instance( ).open( strSealed );
+        if ( flowState == null || !strState.equals( flowState.getState( ) ) )
+        {
+            // the cookie is kept, so that a forged callback doesn't cancel the pending login
+            return null;
+        }
+        OauthUtils.addCookie( request, response, strCookieName, "", 0 );
+
+        return flowState;
+    }
+
+    /**
+     * 
+     * @param strHandlerName
+     *            the handler name
+     * @return the name of the cookie of the sealed flow state
+     */
+    private static String getCookieName( String strHandlerName )
+    {
+        return StringUtils.isEmpty( strHandlerName ) ? COOKIE_NAME : COOKIE_NAME + "_" + strHandlerName;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.service;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.apache.commons.lang3.StringUtils;
+
+import fr.paris.lutece.plugins.oauth2.business.FlowState;
+import fr.paris.lutece.plugins.oauth2.web.Constants;
+
+/**
+ * Flow state store keeping the flow states in the HTTP session, one per callback handler. This is the default store, which
+ * requires sticky sessions or session replication in a cluster.
+ * 
+ * @since 2.0.1
+ */
+public class SessionFlowStateStore implements FlowStateStore
+{
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public String put( HttpServletRequest request, HttpServletResponse response, FlowState flowState )
+    {
+        request.getSession( true ).setAttribute( getAttributeName( flowState.getHandlerName( ) ), flowState );
+
+        return flowState.getState( );
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public FlowState take( HttpServletRequest request, HttpServletResponse response, String strHandlerName, String strState )
+    {
+        HttpSession session = request.getSession( false );
+        if ( session == null )
+        {
+            return null;
+        }
+
+        String strAttributeName = getAttributeName( strHandlerName );
+        synchronized( session )
+        {
+            Object flowState = session.getAttribute( strAttributeName );
+            // as before the flow state store, a callback without state parameter is accepted. The flow state is only removed
+            // when the state matches, so that a forged callback doesn't cancel the pending login
+            if ( !( flowState instanceof FlowState ) || ( strState != null && !strState.equals( ( (FlowState) flowState ).getState( ) ) ) )
+            {
+                return null;
+            }
+            session.removeAttribute( strAttributeName );
+
+            return (FlowState) flowState;
+        }
+    }
+
+    /**
+     * 
+     * @param strHandlerName
+     *            the handler name
+     * @return the name of the session attribute of the flow state
+     */
+    private static String getAttributeName( String strHandlerName )
+    {
+        return StringUtils.isEmpty( strHandlerName ) ? Constants.FLOW_STATE_SESSION_VARIABLE : strHandlerName + Constants.FLOW_STATE_SESSION_VARIABLE;
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.service;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import fr.paris.lutece.plugins.oauth2.business.AuthClientConf;
+import fr.paris.lutece.plugins.oauth2.business.AuthServerConf;
+import fr.paris.lutece.plugins.oauth2.business.TokenIntrospection;
+import fr.paris.lutece.plugins.oauth2.web.Constants;
+import fr.paris.lutece.util.httpaccess.HttpAccess;
+import fr.paris.lutece.util.httpaccess.HttpAccessException;
+import fr.paris.lutece.util.httpaccess.HttpAccessService;
+
+/**
+ * Client of the token introspection endpoint of an authorization server (RFC 7662). The results, active or not, are cached by
+ * token digest until the expiration of the token and at most for a configurable time. Concurrent introspections of the same
+ * token share a single call to the endpoint.
+ * 
+ * @since 2.0.1
+ */
+public class TokenIntrospectionService
+{
+    private static final int DEFAULT_MAX_SIZE = 10000;
+    private static final long DEFAULT_CACHE_TTL = 60L;
+
+    private static Logger _logger = Logger.getLogger( Constants.LOGGER_OAUTH2 );
+
+    private AuthServerConf _authServerConf;
+    private AuthClientConf _authClientConf;
+    private HttpAccessService _httpAccessService;
+    private long _lCacheTtl = DEFAULT_CACHE_TTL;
+    private volatile ExpiringCache<String, TokenIntrospection> _cache = new ExpiringCache<>( DEFAULT_MAX_SIZE );
+    private final Map<String, CompletableFuture<TokenIntrospection>> _mapPendingIntrospections = new ConcurrentHashMap<>( );
+    private final AtomicLong _lCoalescedCount = new AtomicLong( );
+
+    /**
+     * Sets the default server configuration
+     * 
+     * @param authServerConf
+     *            the server configuration
+     */
+    public void setAuthServerConf( AuthServerConf authServerConf )
+    {
+        _authServerConf = authServerConf;
+    }
+
+    /**
+     * Sets the default client configuration, used to authenticate to the introspection endpoint
+     * 
+     * @param authClientConf
+     *            the client configuration
+     */
+    public void setAuthClientConf( AuthClientConf authClientConf )
+    {
+        _authClientConf = authClientConf;
+    }
+
+    /**
+     * Sets the HTTP access service
+     * 
+     * @param httpAccessService
+     *            the HTTP access service
+     */
+    public void setHttpAccessService( HttpAccessService httpAccessService )
+    {
+        _httpAccessService = httpAccessService;
+    }
+
+    /**
+     * Sets the maximum time during which a result is cached
+     * 
+     * @param lCacheTtl
+     *            the time in seconds
+     */
+    public void setCacheTtl( long lCacheTtl )
+    {
+        _lCacheTtl = lCacheTtl;
+    }
+
+    /**
+     * Sets the maximum number of cached results. The results already cached are dropped.
+     * 
+     * @param nMaxSize
+     *            the maximum number of results
+     */
+    public void setMaxSize( int nMaxSize )
+    {
+        _cache = new ExpiringCache<>( nMaxSize );
+    }
+
+    /**
+     * Checks if a token is active, using the default configurations
+     * 
+     * @param strToken
+     *            the token
+     * @return true if the token is active, false if it is not or if it can't be introspected
+     */
+    public boolean isActive( String strToken )
+    {
+        try
+        {
+            TokenIntrospection introspection = introspect( strToken, null );
+            return introspection != null && introspection.isActive( );
+        }
+        catch( IOException | HttpAccessException e )
+        {
+            _logger.error( "Error introspecting a token", e );
+            return false;
+        }
+    }
+
+    /**
+     * Introspect a token, using the default configurations
+     * 
+     * @param strToken
+     *            the token
+     * @param strTokenTypeHint
+     *            The type of the token (access_token or refresh_token), or null
+     * @return the introspection result
+     * @throws IOException
+     *             if the response can't be read
+     * @throws HttpAccessException
+     *             if an error occurs
+     */
+    public TokenIntrospection introspect( String strToken, String strTokenTypeHint ) throws IOException, HttpAccessException
+    {
+        return introspect( _authClientConf, _authServerConf, strToken, strTokenTypeHint );
+    }
+
+    /**
+     * Introspect a token
+     * 
+     * @param clientConfig
+     *            The client configuration
+     * @param authServerConf
+     *            The server configuration
+     * @param strToken
+     *            The token
+     * @param strTokenTypeHint
+     *            The type of the token (access_token or refresh_token), or null
+     * @return the introspection result
+     * @throws IOException
+     *             if the response can't be read
+     * @throws HttpAccessException
+     *             if an error occurs
+     */
+    public TokenIntrospection introspect( AuthClientConf clientConfig, AuthServerConf authServerConf, String strToken, String strTokenTypeHint )
+            throws IOException, HttpAccessException
+    {
+        String strKey = OauthUtils.digest( authServerConf.getIntrospectionEndpointUri( ), clientConfig.getClientId( ), strToken );
+        TokenIntrospection introspection = _cache.get( strKey );
+        if ( introspection != null )
+        {
+            return introspection;
+        }
+
+        CompletableFuture<TokenIntrospection> lookup = new CompletableFuture<>( );
+        CompletableFuture<TokenIntrospection> pendingLookup = _mapPendingIntrospections.putIfAbsent( strKey, lookup );
+        if ( pendingLookup != null )
+        {
+            _lCoalescedCount.incrementAndGet( );
+            return waitFor( pendingLookup );
+        }
+
+        try
+        {
+            introspection = request( clientConfig, authServerConf, strToken, strTokenTypeHint );
+            _cache.put( strKey, introspection, getExpiration( introspection ) );
+            lookup.complete( introspection );
+            return introspection;
+        }
+        catch( IOException | HttpAccessException | RuntimeException e )
+        {
+            lookup.completeExceptionally( e );
+            throw e;
+        }
+        finally
+        {
+            _mapPendingIntrospections.remove( strKey, lookup );
+        }
+    }
+
+    /**
+     * Gets the number of cached results
+     * 
+     * @return the number of cached results
+     */
+    public int getCacheSize( )
+    {
+        return _cache.size( );
+    }
+
+    /**
+     * Gets the ratio of introspections answered by the cache
+     * 
+     * @return the hit ratio, between 0 and 1
+     */
+    public double getHitRatio( )
+    {
+        return _cache.getHitRatio( );
+    }
+
+    /**
+     * Gets the number of introspections answered by the cache
+     * 
+     * @return the number of hits
+     */
+    public long getHitCount( )
+    {
+        return _cache.getHitCount( );
+    }
+
+    /**
+     * Gets the number of introspections not found in the cache
+     * 
+     * @return the number of misses
+     */
+    public long getMissCount( )
+    {
+        return _cache.getMissCount( );
+    }
+
+    /**
+     * Gets the number of introspections which waited for the same introspection made by another thread
+     * 
+     * @return the number of coalesced introspections
+     */
+    public long getCoalescedCount( )
+    {
+        return _lCoalescedCount.get( );
+    }
+
+    /**
+     * Call the introspection endpoint
+     * 
+     * @param clientConfig
+     *            The client configuration
+     * @param authServerConf
+     *            The server configuration
+     * @param strToken
+     *            The token
+     * @param strTokenTypeHint
+     *            The type of the token, or null
+     * @return the introspection result
+     * @throws IOException
+     *             if the response can't be read
+     * @throws HttpAccessException
+     *             if an error occurs
+     */
+    private TokenIntrospection request( AuthClientConf clientConfig, AuthServerConf authServerConf, String strToken, String strTokenTypeHint )
+            throws IOException, HttpAccessException
+    {
+        Map<String, String> mapParameters = new ConcurrentHashMap<String, String>( );
+        mapParameters.put( Constants.PARAMETER_TOKEN, strToken );
+        if ( strTokenTypeHint != null )
+        {
+            mapParameters.put( Constants.PARAMETER_TOKEN_TYPE_HINT, strTokenTypeHint );
+        }
+        mapParameters.put( Constants.PARAMETER_CLIENT_ID, clientConfig.getClientId( ) );
+        mapParameters.put( Constants.PARAMETER_CLIENT_SECRET, clientConfig.getClientSecret( ) );
+        String strUrl = authServerConf.getIntrospectionEndpointUri( );
+
+        _logger.debug( "Introspect Token : call URL  " + strUrl );
+
+        HttpAccess httpAccess = ( _httpAccessService != null ) ? new HttpAccess( _httpAccessService ) : new HttpAccess( );
+        return MapperService.parse( httpAccess.doPost( strUrl, mapParameters ), TokenIntrospection.class );
+    }
+
+    /**
+     * Gets the time until which an introspection result is cached
+     * 
+     * @param introspection
+     *            the introspection result
+     * @return the expiration
+     */
+    private Instant getExpiration( TokenIntrospection introspection )
+    {
+        Instant expiration = Instant.now( ).plusSeconds( _lCacheTtl );
+        if ( introspection.getExpiration( ) != null && Instant.ofEpochSecond( introspection.getExpiration( ) ).isBefore( expiration ) )
+        {
+            return Instant.ofEpochSecond( introspection.getExpiration( ) );
+        }
+        return expiration;
+    }
+
+    /**
+     * Wait for the introspection made by another thread
+     * 
+     * @param pendingLookup
+     *            the pending introspection
+     * @return the introspection result
+     * @throws IOException
+     *             if the response can't be read
+     * @throws HttpAccessException
+     *             if an error occurs
+     */
+    private static TokenIntrospection waitFor( CompletableFuture<TokenIntrospection> pendingLookup ) throws IOException, HttpAccessException
+    {
+        try
+        {
+            return pendingLookup.join( );
+        }
+        catch( CompletionException e )
+        {
+            Throwable cause = e.getCause( );
+            if ( cause instanceof IOException )
+            {
+                throw (IOException) cause;
+            }
+            if ( cause instanceof HttpAccessException )
+            {
+                throw (HttpAccessException) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,455 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.service;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import fr.paris.lutece.plugins.oauth2.business.AuthClientConf;
+import fr.paris.lutece.plugins.oauth2.business.AuthServerConf;
+import fr.paris.lutece.plugins.oauth2.business.Token;
+import fr.paris.lutece.plugins.oauth2.web.Constants;
+
+/**
+ * Service refreshing in background the tracked access tokens shortly before their expiration, so that the requests using
+ * them don't have to wait for the refresh. The refresh of each token is delayed by a random jitter to spread the load on the
+ * authorization server. This service is disabled by default.
+ * 
+ * @since 2.0.1
+ */
+public class TokenRefreshService
+{
+    private static final long DEFAULT_LEAD_TIME = 60L;
+    private static final long DEFAULT_JITTER = 30L;
+    private static final int DEFAULT_MAX_TRACKED_TOKENS = 10000;
+
+    private static Logger _logger = Logger.getLogger( Constants.LOGGER_OAUTH2 );
+    private static final Map<String, Tracking> _mapTrackings = new ConcurrentHashMap<>( );
+
+    private TokenService _tokenService;
+    private boolean _bEnabled;
+    private long _lLeadTime = DEFAULT_LEAD_TIME;
+    private long _lJitter = DEFAULT_JITTER;
+    private int _nMaxTrackedTokens = DEFAULT_MAX_TRACKED_TOKENS;
+    private final AtomicInteger _nTrackedTokens = new AtomicInteger( );
+    private final AtomicLong _lRefreshCount = new AtomicLong( );
+    private final AtomicLong _lRefreshFailureCount = new AtomicLong( );
+
+    /**
+     * Sets the token service
+     * 
+     * @param tokenService
+     *            the token service
+     */
+    public void setTokenService( TokenService tokenService )
+    {
+        _tokenService = tokenService;
+    }
+
+    /**
+     * Enables or disables the background refresh
+     * 
+     * @param bEnabled
+     *            true to enable the background refresh
+     */
+    public void setEnabled( boolean bEnabled )
+    {
+        _bEnabled = bEnabled;
+    }
+
+    /**
+     * Is the background refresh enabled
+     * 
+     * @return true if the background refresh is enabled
+     */
+    public boolean isEnabled( )
+    {
+        return _bEnabled;
+    }
+
+    /**
+     * Sets the time before the expiration of a token at which it is refreshed
+     * 
+     * @param lLeadTime
+     *            the lead time in seconds
+     */
+    public void setLeadTime( long lLeadTime )
+    {
+        _lLeadTime = lLeadTime;
+    }
+
+    /**
+     * Sets the maximum random delay subtracted from the refresh time of each token
+     * 
+     * @param lJitter
+     *            the jitter in seconds
+     */
+    public void setJitter( long lJitter )
+    {
+        _lJitter = lJitter;
+    }
+
+    /**
+     * Sets the maximum number of tracked tokens
+     * 
+     * @param nMaxTrackedTokens
+     *            the maximum number of tracked tokens
+     */
+    public void setMaxTrackedTokens( int nMaxTrackedTokens )
+    {
+        _nMaxTrackedTokens = nMaxTrackedTokens;
+    }
+
+    /**
+     * Track a token so that it is refreshed before its expiration. The returned registration only holds the key of the tracking,
+     * so that it can be stored in the HTTP session of the user : the tracking is cancelled when the session ends.
+     * 
+     * @param token
+     *            the token
+     * @param clientConfig
+     *            the client configuration
+     * @param authServerConf
+     *            the server configuration
+     * @param listener
+     *            the listener notified of the new tokens
+     * @return the registration or null if the token can't be tracked (service disabled, no refresh token, no expiration or too
+     *         many tracked tokens)
+     */
+    public Registration register( Token token, AuthClientConf clientConfig, AuthServerConf authServerConf, TokenRefreshListener listener )
+    {
+        if ( !_bEnabled || token == null || StringUtils.isEmpty( token.getRefreshToken( ) ) || token.getExpiresIn( ) <= 0 )
+        {
+            return null;
+        }
+        if ( _nTrackedTokens.incrementAndGet( ) > _nMaxTrackedTokens )
+        {
+            _nTrackedTokens.decrementAndGet( );
+            _logger.warn( "TokenRefreshService : too many tracked tokens, the token will be refreshed on demand" );
+            return null;
+        }
+
+        Tracking tracking = new Tracking( token, clientConfig, authServerConf, listener );
+        _mapTrackings.put( tracking._strKey, tracking );
+        schedule( tracking );
+        return new Registration( tracking._strKey );
+    }
+
+    /**
+     * Gets the number of tracked tokens
+     * 
+     * @return the number of tracked tokens
+     */
+    public int getTrackedTokenCount( )
+    {
+        return _nTrackedTokens.get( );
+    }
+
+    /**
+     * Gets the number of tokens refreshed in background
+     * 
+     * @return the number of refreshes
+     */
+    public long getRefreshCount( )
+    {
+        return _lRefreshCount.get( );
+    }
+
+    /**
+     * Gets the number of background refreshes which failed
+     * 
+     * @return the number of failures
+     */
+    public long getRefreshFailureCount( )
+    {
+        return _lRefreshFailureCount.get( );
+    }
+
+    /**
+     * Schedule the refresh of a tracked token
+     * 
+     * @param tracking
+     *            the tracking of the token
+     */
+    private void schedule( Tracking tracking )
+    {
+        Token token = tracking.getToken( );
+        // the lead time and the jitter are capped so that short lived tokens are not refreshed continuously
+        long lLeadTime = Math.min( _lLeadTime, token.getExpiresIn( ) / 2 );
+        long lJitter = Math.min( _lJitter, ( token.getExpiresIn( ) - lLeadTime ) / 2 );
+        Instant refreshTime = token.getCreationTime( ).plusSeconds( token.getExpiresIn( ) - lLeadTime );
+        if ( lJitter > 0 )
+        {
+            refreshTime = refreshTime.minusMillis( ThreadLocalRandom.current( ).nextLong( lJitter * 1000L ) );
+        }
+        long lDelay = Math.max( 0L, Duration.between( Instant.now( ), refreshTime ).toMillis( ) );
+        tracking.setRefreshTask( RefreshSchedulerService.schedule( ( ) -> refresh( tracking ), lDelay, TimeUnit.MILLISECONDS ) );
+    }
+
+    /**
+     * Refresh a tracked token
+     * 
+     * @param tracking
+     *            the tracking of the token
+     */
+    private void refresh( Tracking tracking )
+    {
+        if ( tracking.isCancelled( ) )
+        {
+            return;
+        }
+        Token token = tracking.getToken( );
+        Token newToken = null;
+        try
+        {
+            newToken = _tokenService.getTokenByRefreshToken( tracking._clientConfig, tracking._authServerConf, token.getRefreshToken( ) );
+        }
+        catch( RuntimeException e )
+        {
+            _logger.error( "TokenRefreshService : error while refreshing a token", e );
+        }
+        if ( tracking.isCancelled( ) )
+        {
+            return;
+        }
+        if ( newToken == null )
+        {
+            _lRefreshFailureCount.incrementAndGet( );
+            _logger.debug( "TokenRefreshService : the token could not be refreshed" );
+            tracking.cancel( );
+            tracking._listener.refreshFailed( token );
+            return;
+        }
+        if ( StringUtils.isEmpty( newToken.getRefreshToken( ) ) )
+        {
+            // the refresh token is not rotated
+            newToken.setRefreshToken( token.getRefreshToken( ) );
+        }
+        _lRefreshCount.incrementAndGet( );
+        tracking.setToken( newToken );
+        tracking._listener.tokenRefreshed( newToken );
+        if ( newToken.getExpiresIn( ) > 0 )
+        {
+            schedule( tracking );
+        }
+        else
+        {
+            tracking.cancel( );
+        }
+    }
+
+    /**
+     * Registration of a tracked token, which only holds the key of the tracking so that it can be kept in the HTTP session. A
+     * registration restored by another node or after a restart doesn't match any tracking.
+     */
+    public static final class Registration implements HttpSessionBindingListener, Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final String _strKey;
+
+        /**
+         * Constructor
+         * 
+         * @param strKey
+         *            the key of the tracking
+         */
+        private Registration( String strKey )
+        {
+            _strKey = strKey;
+        }
+
+        /**
+         * Gets the last token
+         * 
+         * @return the last token, or null if the token is no longer tracked
+         */
+        public Token getToken( )
+        {
+            Tracking tracking = _mapTrackings.get( _strKey );
+            return ( tracking != null ) ? tracking._token : null;
+        }
+
+        /**
+         * Is the tracking cancelled
+         * 
+         * @return true if the tracking is cancelled
+         */
+        public boolean isCancelled( )
+        {
+            return !_mapTrackings.containsKey( _strKey );
+        }
+
+        /**
+         * Stop tracking the token
+         */
+        public void cancel( )
+        {
+            Tracking tracking = _mapTrackings.get( _strKey );
+            if ( tracking != null )
+            {
+                tracking.cancel( );
+            }
+        }
+
+        /**
+         * {@inheritDoc }
+         */
+        @Override
+        public void valueBound( HttpSessionBindingEvent event )
+        {
+            // nothing to do
+        }
+
+        /**
+         * {@inheritDoc }
+         */
+        @Override
+        public void valueUnbound( HttpSessionBindingEvent event )
+        {
+            cancel( );
+        }
+    }
+
+    /**
+     * Tracking of a token
+     */
+    private final class Tracking
+    {
+        private final String _strKey = UUID.randomUUID( ).toString( );
+        private final AuthClientConf _clientConfig;
+        private final AuthServerConf _authServerConf;
+        private final TokenRefreshListener _listener;
+        private volatile Token _token;
+        private volatile ScheduledFuture<?> _refreshTask;
+        private volatile boolean _bCancelled;
+
+        /**
+         * Constructor
+         * 
+         * @param token
+         *            the token
+         * @param clientConfig
+         *            the client configuration
+         * @param authServerConf
+         *            the server configuration
+         * @param listener
+         *            the listener
+         */
+        private Tracking( Token token, AuthClientConf clientConfig, AuthServerConf authServerConf, TokenRefreshListener listener )
+        {
+            _token = token;
+            _clientConfig = clientConfig;
+            _authServerConf = authServerConf;
+            _listener = listener;
+        }
+
+        /**
+         * Gets the last token
+         * 
+         * @return the last token
+         */
+        private Token getToken( )
+        {
+            return _token;
+        }
+
+        /**
+         * Is the tracking cancelled
+         * 
+         * @return true if the tracking is cancelled
+         */
+        private boolean isCancelled( )
+        {
+            return _bCancelled;
+        }
+
+        /**
+         * Stop tracking the token
+         */
+        private synchronized void cancel( )
+        {
+            if ( !_bCancelled )
+            {
+                _bCancelled = true;
+                _mapTrackings.remove( _strKey );
+                _nTrackedTokens.decrementAndGet( );
+                if ( _refreshTask != null )
+                {
+                    _refreshTask.cancel( false );
+                }
+            }
+        }
+
+        /**
+         * Sets the last token
+         * 
+         * @param token
+         *            the token
+         */
+        private void setToken( Token token )
+        {
+            _token = token;
+        }
+
+        /**
+         * Sets the next refresh
+         * 
+         * @param refreshTask
+         *            the next refresh
+         */
+        private synchronized void setRefreshTask( ScheduledFuture<?> refreshTask )
+        {
+            _refreshTask = refreshTask;
+            if ( _bCancelled )
+            {
+                refreshTask.cancel( false );
+            }
+        }
+    }
+}
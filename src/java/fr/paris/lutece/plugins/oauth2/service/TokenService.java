@@ -36,7 +36,12 @@ package fr.paris.lutece.plugins.oauth2.service;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.inject.Named;
 import javax.servlet.http.HttpSession;
@@ -47,12 +52,14 @@ import org.apache.log4j.Logger;
 import fr.paris.lutece.plugins.oauth2.business.AuthClientConf;
 import fr.paris.lutece.plugins.oauth2.business.AuthServerConf;
 import fr.paris.lutece.plugins.oauth2.business.Token;
+import fr.paris.lutece.plugins.oauth2.business.TokenIntrospection;
 import fr.paris.lutece.plugins.oauth2.jwt.JWTParser;
 import fr.paris.lutece.plugins.oauth2.jwt.TokenValidationException;
 import fr.paris.lutece.plugins.oauth2.web.Constants;
 import fr.paris.lutece.portal.service.spring.SpringContextService;
 import fr.paris.lutece.util.httpaccess.HttpAccess;
 import fr.paris.lutece.util.httpaccess.HttpAccessException;
+import fr.paris.lutece.util.httpaccess.HttpAccessService;
 
 /**
  * TokenService
@@ -61,12 +68,24 @@ public final class TokenService
 {
     private final AuthClientConf _defaultClientConfig;
     private final AuthServerConf _defaultauthServerConfig;
+    private HttpAccessService _httpAccessService;
+    private HttpAccess _httpAccess;
+    private TokenIntrospectionService _tokenIntrospectionService;
+    private final Map<String, CompletableFuture<Token>> _mapPendingRefreshes = new ConcurrentHashMap<>( );
+    private final ExpiringCache<String, Token> _recentRefreshes = new ExpiringCache<>( RECENT_REFRESHES_MAX_SIZE );
+    private final Map<String, Token> _mapClientCredentialsTokens = new ConcurrentHashMap<>( );
+    private final Map<String, CompletableFuture<Token>> _mapPendingClientCredentials = new ConcurrentHashMap<>( );
 
     private static Logger _logger = Logger.getLogger( Constants.LOGGER_OAUTH2 );
 
     private static final String BEAN_AUTH_CLIENT_CONF = "oauth2.client";
     private static final String BEAN_AUTH_SERVER_CONF = "oauth2.server";
     private static final String BEAN_TOKEN_SERVICE = "oauth2.tokenService";
+    private static final int RECENT_REFRESHES_MAX_SIZE = 1000;
+    private static final long REFRESH_REUSE_DELAY = 10L;
+    private static final long CLIENT_CREDENTIALS_RENEWAL_LEAD_TIME = 30L;
+    private static final long CLIENT_CREDENTIALS_DEFAULT_TTL = 300L;
+    private static final String SCOPE_SEPARATOR = " ";
 
     /**
      * Constructs a TokenService
@@ -84,6 +103,73 @@ public final class TokenService
         _defaultauthServerConfig = defaultauthServerConfig;
     }
 
+    /**
+     * Sets the HTTP access service shared by all the calls to the authorization server
+     * 
+     * @param httpAccessService
+     *            the HTTP access service
+     * @since 2.0.1
+     */
+    public void setHttpAccessService( HttpAccessService httpAccessService )
+    {
+        _httpAccessService = httpAccessService;
+    }
+
+    /**
+     * Sets the HTTP access used for all the calls to the authorization server, instead of one built from the HTTP access
+     * service
+     * 
+     * @param httpAccess
+     *            the HTTP access
+     */
+    void setHttpAccess( HttpAccess httpAccess )
+    {
+        _httpAccess = httpAccess;
+    }
+
+    /**
+     * Sets the token introspection service
+     * 
+     * @param tokenIntrospectionService
+     *            the token introspection service
+     * @since 2.0.1
+     */
+    public void setTokenIntrospectionService( TokenIntrospectionService tokenIntrospectionService )
+    {
+        _tokenIntrospectionService = tokenIntrospectionService;
+    }
+
+    /**
+     * Gets the token introspection service, created on first use if none has been set
+     * 
+     * @return the token introspection service
+     */
+    private synchronized TokenIntrospectionService getTokenIntrospectionService( )
+    {
+        if ( _tokenIntrospectionService == null )
+        {
+            _tokenIntrospectionService = new TokenIntrospectionService( );
+            _tokenIntrospectionService.setAuthClientConf( _defaultClientConfig );
+            _tokenIntrospectionService.setAuthServerConf( _defaultauthServerConfig );
+            _tokenIntrospectionService.setHttpAccessService( _httpAccessService );
+        }
+        return _tokenIntrospectionService;
+    }
+
+    /**
+     * Gets an HttpAccess using the shared HTTP access service if any
+     * 
+     * @return the HttpAccess
+     */
+    private HttpAccess getHttpAccess( )
+    {
+        if ( _httpAccess != null )
+        {
+            return _httpAccess;
+        }
+        return ( _httpAccessService != null ) ? new HttpAccess( _httpAccessService ) : new HttpAccess( );
+    }
+
     /**
      * Retrieve a token using an authorization code
      * 
@@ -151,7 +237,7 @@ public final class TokenService
             mapParameters.put( Constants.PARAMETER_REDIRECT_URI, strRedirectUri );
         }
 
-        HttpAccess httpAccess = new HttpAccess( );
+        HttpAccess httpAccess = getHttpAccess( );
         String strUrl = authServerConf.getTokenEndpointUri( );
 
         _logger.debug( "Posted URL : " + strUrl + "\nParameters :\n" + OauthUtils.traceMap( mapParameters ) );
@@ -167,6 +253,37 @@ public final class TokenService
         return token;
     }
 
+    /**
+     * Retrieve asynchronously a token using an authorization code. The call to the token endpoint is run by the
+     * {@link AsyncExecutorService} so that the calling thread is not blocked during the round trip.
+     * 
+     * @param strRedirectUri
+     *            the redirect URI
+     * @param clientConfig
+     *            The client configuration
+     * @param authServerConf
+     *            The server configuration
+     * @param strAuthorizationCode
+     *            The authorization code
+     * @param session
+     *            The HTTP session
+     * @param jWTParser
+     *            The JWT parser
+     * @param strStoredNonce
+     *            The stored nonce
+     * @param strCodeVerifier
+     *            The PKCE code verifier
+     * @return The future token. It completes exceptionally with the IOException, HttpAccessException or
+     *         TokenValidationException thrown by the synchronous call
+     * @since 2.0.1
+     */
+    public CompletableFuture<Token> getTokenAsync( String strRedirectUri, AuthClientConf clientConfig, AuthServerConf authServerConf,
+            String strAuthorizationCode, HttpSession session, JWTParser jWTParser, String strStoredNonce, String strCodeVerifier )
+    {
+        return AsyncExecutorService.supplyAsync( ( ) -> getToken( strRedirectUri, clientConfig, authServerConf, strAuthorizationCode, session,
+                jWTParser, strStoredNonce, strCodeVerifier ) );
+    }
+
     /**
      *
      * Validate refresh token
@@ -188,7 +305,8 @@ public final class TokenService
 
     /**
      *
-     * Validate refresh token
+     * Validate refresh token. If the server has a token introspection endpoint, the refresh token is checked without being
+     * consumed and the result is kept briefly. Otherwise a refresh token grant is performed.
      * 
      * @param clientConfig
      *            ClientConf
@@ -201,6 +319,19 @@ public final class TokenService
      */
     public boolean validateRefreshToken( AuthClientConf clientConfig, AuthServerConf authServerConf, String strRefreshToken )
     {
+        if ( StringUtils.isNotEmpty( authServerConf.getIntrospectionEndpointUri( ) ) )
+        {
+            try
+            {
+                TokenIntrospection introspection = introspect( clientConfig, authServerConf, strRefreshToken, Constants.TOKEN_TYPE_HINT_REFRESH_TOKEN );
+                return introspection != null && introspection.isActive( );
+            }
+            catch( IOException | HttpAccessException e )
+            {
+                _logger.error( "Error validating the refresh token by introspection", e );
+                return false;
+            }
+        }
 
         Map<String, String> mapParameters = new ConcurrentHashMap<String, String>( );
         Map<String, String> mapResponseHeader = new ConcurrentHashMap<String, String>( );
@@ -208,7 +339,7 @@ public final class TokenService
         mapParameters.put( Constants.PARAMETER_REFRESH_TOKEN, strRefreshToken );
         mapParameters.put( Constants.PARAMETER_CLIENT_ID, clientConfig.getClientId( ) );
         mapParameters.put( Constants.PARAMETER_CLIENT_SECRET, clientConfig.getClientSecret( ) );
-        HttpAccess httpAccess = new HttpAccess( );
+        HttpAccess httpAccess = getHttpAccess( );
         String strUrl = authServerConf.getTokenEndpointUri( );
 
         _logger.debug( "Validate Refresh Token : call URL  " + strUrl + "\nParameters :\n" + OauthUtils.traceMap( mapParameters ) );
@@ -229,6 +360,31 @@ public final class TokenService
         return false;
     }
 
+    /**
+     * Introspect a token with the token introspection endpoint of the server. The result is cached by the
+     * {@link TokenIntrospectionService}.
+     * 
+     * @param clientConfig
+     *            The client configuration
+     * @param authServerConf
+     *            The server configuration
+     * @param strToken
+     *            The token
+     * @param strTokenTypeHint
+     *            The type of the token (access_token or refresh_token), or null
+     * @return the introspection result
+     * @throws IOException
+     *             if the response can't be read
+     * @throws HttpAccessException
+     *             if an error occurs
+     * @since 2.0.1
+     */
+    public TokenIntrospection introspect( AuthClientConf clientConfig, AuthServerConf authServerConf, String strToken, String strTokenTypeHint )
+            throws IOException, HttpAccessException
+    {
+        return getTokenIntrospectionService( ).introspect( clientConfig, authServerConf, strToken, strTokenTypeHint );
+    }
+
     /**
      *
      * Get new Token using refresh token
@@ -249,7 +405,9 @@ public final class TokenService
 
     /**
      *
-     * Get new Token using refresh token
+     * Get new Token using refresh token. Concurrent calls for the same refresh token share a single call to the token
+     * endpoint, and the new token is returned again to the calls made shortly after. Each caller gets its own copy of the new
+     * token, so that a caller modifying it doesn't affect the others.
      * 
      * @param clientConfig
      *            ClientConf
@@ -262,7 +420,84 @@ public final class TokenService
      */
     public Token getTokenByRefreshToken( AuthClientConf clientConfig, AuthServerConf authServerConf, String strRefreshToken )
     {
+        String strKey = OauthUtils.digest( authServerConf.getTokenEndpointUri( ), clientConfig.getClientId( ), strRefreshToken );
+        Token recentToken = _recentRefreshes.get( strKey );
+        if ( recentToken != null )
+        {
+            return recentToken.copy( );
+        }
+
+        CompletableFuture<Token> refresh = new CompletableFuture<>( );
+        CompletableFuture<Token> pendingRefresh = _mapPendingRefreshes.putIfAbsent( strKey, refresh );
+        if ( pendingRefresh != null )
+        {
+            _logger.debug( "Get Token By Refresh Token : waiting for the refresh in progress" );
+            Token sharedToken = waitFor( pendingRefresh );
+            return ( sharedToken != null ) ? sharedToken.copy( ) : null;
+        }
+
+        try
+        {
+            Token newToken = requestTokenByRefreshToken( clientConfig, authServerConf, strRefreshToken );
+            if ( newToken != null )
+            {
+                Token sharedToken = newToken.copy( );
+                _recentRefreshes.put( strKey, sharedToken, Instant.now( ).plusSeconds( REFRESH_REUSE_DELAY ) );
+                refresh.complete( sharedToken );
+            }
+            else
+            {
+                refresh.complete( null );
+            }
+            return newToken;
+        }
+        catch( RuntimeException e )
+        {
+            refresh.completeExceptionally( e );
+            throw e;
+        }
+        finally
+        {
+            _mapPendingRefreshes.remove( strKey, refresh );
+        }
+    }
+
+    /**
+     * Wait for the refresh made by another thread
+     * 
+     * @param pendingRefresh
+     *            the pending refresh
+     * @return the new token
+     */
+    private Token waitFor( CompletableFuture<Token> pendingRefresh )
+    {
+        try
+        {
+            return pendingRefresh.join( );
+        }
+        catch( CompletionException e )
+        {
+            if ( e.getCause( ) instanceof RuntimeException )
+            {
+                throw (RuntimeException) e.getCause( );
+            }
+            throw e;
+        }
+    }
 
+    /**
+     * Call the token endpoint to get a new Token using refresh token
+     * 
+     * @param clientConfig
+     *            ClientConf
+     * @param authServerConf
+     *            AutConf
+     * @param strRefreshToken
+     *            refreshToken
+     * @return the new token or null if the token could not be refreshed
+     */
+    private Token requestTokenByRefreshToken( AuthClientConf clientConfig, AuthServerConf authServerConf, String strRefreshToken )
+    {
         Map<String, String> mapParameters = new ConcurrentHashMap<String, String>( );
         Map<String, String> mapResponseHeader = new ConcurrentHashMap<String, String>( );
         mapParameters.put( Constants.PARAMETER_GRANT_TYPE, Constants.GRANT_TYPE_REFRESH_TOKEN );
@@ -270,7 +505,7 @@ public final class TokenService
         mapParameters.put( Constants.PARAMETER_CLIENT_ID, clientConfig.getClientId( ) );
         mapParameters.put( Constants.PARAMETER_CLIENT_SECRET, clientConfig.getClientSecret( ) );
         Token newToken = null;
-        HttpAccess httpAccess = new HttpAccess( );
+        HttpAccess httpAccess = getHttpAccess( );
         String strUrl = authServerConf.getTokenEndpointUri( );
 
         _logger.debug( "Get Token By Refresh Token : call URL  " + strUrl + "\nParameters :\n" + OauthUtils.traceMap( mapParameters ) );
@@ -302,6 +537,284 @@ public final class TokenService
         return newToken;
     }
 
+    /**
+     * Get asynchronously a new Token using refresh token
+     * 
+     * @param strRefreshToken
+     *            refreshToken
+     * @return the future new token, completed with null if the token could not be refreshed
+     * @since 2.0.1
+     */
+    public CompletableFuture<Token> getTokenByRefreshTokenAsync( String strRefreshToken )
+    {
+        return getTokenByRefreshTokenAsync( _defaultClientConfig, _defaultauthServerConfig, strRefreshToken );
+    }
+
+    /**
+     * Get asynchronously a new Token using refresh token
+     * 
+     * @param clientConfig
+     *            ClientConf
+     * @param authServerConf
+     *            AutConf
+     * @param strRefreshToken
+     *            refreshToken
+     * @return the future new token, completed with null if the token could not be refreshed
+     * @since 2.0.1
+     */
+    public CompletableFuture<Token> getTokenByRefreshTokenAsync( AuthClientConf clientConfig, AuthServerConf authServerConf, String strRefreshToken )
+    {
+        return AsyncExecutorService.supplyAsync( ( ) -> getTokenByRefreshToken( clientConfig, authServerConf, strRefreshToken ) );
+    }
+
+    /**
+     * Get a token for the client itself using the client credentials grant
+     * 
+     * @param scopes
+     *            the requested scopes, or null for the default scopes of the client
+     * @return the token
+     * @throws IOException
+     *             if an error occurs
+     * @throws HttpAccessException
+     *             if an error occurs
+     * @throws TokenValidationException
+     *             If the token validation failed
+     * @since 2.0.1
+     */
+    public Token getClientCredentialsToken( Set<String> scopes ) throws IOException, HttpAccessException, TokenValidationException
+    {
+        return getClientCredentialsToken( _defaultClientConfig, _defaultauthServerConfig, scopes );
+    }
+
+    /**
+     * Get a token for the client itself using the client credentials grant. One token is kept for each client and set of
+     * scopes, and is shared by all the callers. It is renewed in background shortly before its expiration, by a single call
+     * to the token endpoint.
+     * 
+     * @param clientConfig
+     *            The client configuration
+     * @param authServerConf
+     *            The server configuration
+     * @param scopes
+     *            the requested scopes, or null for the default scopes of the client
+     * @return the token, or null if the token endpoint returned an empty response
+     * @throws IOException
+     *             if an error occurs
+     * @throws HttpAccessException
+     *             if an error occurs
+     * @throws TokenValidationException
+     *             If the token validation failed
+     * @since 2.0.1
+     */
+    public Token getClientCredentialsToken( AuthClientConf clientConfig, AuthServerConf authServerConf, Set<String> scopes )
+            throws IOException, HttpAccessException, TokenValidationException
+    {
+        String strScope = ( scopes == null || scopes.isEmpty( ) ) ? null : String.join( SCOPE_SEPARATOR, new TreeSet<>( scopes ) );
+        String strKey = OauthUtils.digest( authServerConf.getTokenEndpointUri( ), clientConfig.getClientId( ), strScope );
+
+        Token token = _mapClientCredentialsTokens.get( strKey );
+        Instant now = Instant.now( );
+        if ( token != null && now.isBefore( getExpiration( token ) ) )
+        {
+            if ( !now.isBefore( getExpiration( token ).minusSeconds( getRenewalLeadTime( token ) ) ) )
+            {
+                // the current token is still valid while the new one is requested
+                renewClientCredentialsToken( strKey, clientConfig, authServerConf, strScope, true );
+            }
+            return token;
+        }
+
+        return waitForClientCredentials( renewClientCredentialsToken( strKey, clientConfig, authServerConf, strScope, false ) );
+    }
+
+    /**
+     * Forget the client credentials token of a client, for instance when it has been revoked
+     * 
+     * @param clientConfig
+     *            The client configuration
+     * @param authServerConf
+     *            The server configuration
+     * @param scopes
+     *            the scopes of the token
+     * @since 2.0.1
+     */
+    public void invalidateClientCredentialsToken( AuthClientConf clientConfig, AuthServerConf authServerConf, Set<String> scopes )
+    {
+        String strScope = ( scopes == null || scopes.isEmpty( ) ) ? null : String.join( SCOPE_SEPARATOR, new TreeSet<>( scopes ) );
+        _mapClientCredentialsTokens.remove( OauthUtils.digest( authServerConf.getTokenEndpointUri( ), clientConfig.getClientId( ), strScope ) );
+    }
+
+    /**
+     * Renew a client credentials token. Concurrent renewals of the same token share a single call to the token endpoint.
+     * 
+     * @param strKey
+     *            the key of the token
+     * @param clientConfig
+     *            The client configuration
+     * @param authServerConf
+     *            The server configuration
+     * @param strScope
+     *            the requested scope
+     * @param bAsync
+     *            true to run the call to the token endpoint in background
+     * @return the renewal
+     */
+    private CompletableFuture<Token> renewClientCredentialsToken( String strKey, AuthClientConf clientConfig, AuthServerConf authServerConf,
+            String strScope, boolean bAsync )
+    {
+        CompletableFuture<Token> renewal = new CompletableFuture<>( );
+        CompletableFuture<Token> pendingRenewal = _mapPendingClientCredentials.putIfAbsent( strKey, renewal );
+        if ( pendingRenewal != null )
+        {
+            return pendingRenewal;
+        }
+
+        Runnable task = ( ) -> {
+            try
+            {
+                Token newToken = requestClientCredentialsToken( clientConfig, authServerConf, strScope );
+                if ( newToken != null )
+                {
+                    _mapClientCredentialsTokens.put( strKey, newToken );
+                }
+                renewal.complete( newToken );
+            }
+            catch( IOException | HttpAccessException | TokenValidationException | RuntimeException e )
+            {
+                _logger.error( "Error getting a token using the client credentials of " + clientConfig.getClientId( ), e );
+                renewal.completeExceptionally( e );
+            }
+            finally
+            {
+                _mapPendingClientCredentials.remove( strKey, renewal );
+            }
+        };
+
+        if ( bAsync )
+        {
+            try
+            {
+                AsyncExecutorService.getExecutor( ).execute( task );
+                return renewal;
+            }
+            catch( RejectedExecutionException e )
+            {
+                _logger.debug( "Client credentials token renewed synchronously" );
+            }
+        }
+        task.run( );
+        return renewal;
+    }
+
+    /**
+     * Wait for the renewal of a client credentials token
+     * 
+     * @param renewal
+     *            the renewal
+     * @return the new token
+     * @throws IOException
+     *             if an error occurs
+     * @throws HttpAccessException
+     *             if an error occurs
+     * @throws TokenValidationException
+     *             If the token validation failed
+     */
+    private Token waitForClientCredentials( CompletableFuture<Token> renewal ) throws IOException, HttpAccessException, TokenValidationException
+    {
+        try
+        {
+            return renewal.join( );
+        }
+        catch( CompletionException e )
+        {
+            Throwable cause = e.getCause( );
+            if ( cause instanceof IOException )
+            {
+                throw (IOException) cause;
+            }
+            if ( cause instanceof HttpAccessException )
+            {
+                throw (HttpAccessException) cause;
+            }
+            if ( cause instanceof TokenValidationException )
+            {
+                throw (TokenValidationException) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Call the token endpoint with the client credentials grant
+     * 
+     * @param clientConfig
+     *            The client configuration
+     * @param authServerConf
+     *            The server configuration
+     * @param strScope
+     *            the requested scope
+     * @return the token, or null if the response is empty
+     * @throws IOException
+     *             if an error occurs
+     * @throws HttpAccessException
+     *             if an error occurs
+     * @throws TokenValidationException
+     *             If the token validation failed
+     */
+    private Token requestClientCredentialsToken( AuthClientConf clientConfig, AuthServerConf authServerConf, String strScope )
+            throws IOException, HttpAccessException, TokenValidationException
+    {
+        Map<String, String> mapParameters = new ConcurrentHashMap<String, String>( );
+        mapParameters.put( Constants.PARAMETER_GRANT_TYPE, Constants.GRANT_TYPE_CLIENT_CREDENTIALS );
+        mapParameters.put( Constants.PARAMETER_CLIENT_ID, clientConfig.getClientId( ) );
+        mapParameters.put( Constants.PARAMETER_CLIENT_SECRET, clientConfig.getClientSecret( ) );
+        if ( strScope != null )
+        {
+            mapParameters.put( Constants.PARAMETER_SCOPE, strScope );
+        }
+        HttpAccess httpAccess = getHttpAccess( );
+        String strUrl = authServerConf.getTokenEndpointUri( );
+
+        _logger.debug( "Get Token By Client Credentials : call URL  " + strUrl + "\nParameters :\n" + OauthUtils.traceMap( mapParameters ) );
+
+        Instant tokenCreationTime = Instant.now( ); // record the creation time before the request to account for the round trip time
+        String strResponse = httpAccess.doPost( strUrl, mapParameters );
+        if ( StringUtils.isEmpty( strResponse ) )
+        {
+            return null;
+        }
+        return parse( strResponse, tokenCreationTime, clientConfig, authServerConf, null, null );
+    }
+
+    /**
+     * Gets the expiration of a client credentials token
+     * 
+     * @param token
+     *            the token
+     * @return the expiration
+     */
+    private static Instant getExpiration( Token token )
+    {
+        return token.getCreationTime( ).plusSeconds( token.getExpiresIn( ) > 0 ? token.getExpiresIn( ) : CLIENT_CREDENTIALS_DEFAULT_TTL );
+    }
+
+    /**
+     * Gets the time before the expiration of a client credentials token at which it is renewed
+     * 
+     * @param token
+     *            the token
+     * @return the lead time in seconds
+     */
+    private static long getRenewalLeadTime( Token token )
+    {
+        long lLifetime = token.getExpiresIn( ) > 0 ? token.getExpiresIn( ) : CLIENT_CREDENTIALS_DEFAULT_TTL;
+        return Math.min( CLIENT_CREDENTIALS_RENEWAL_LEAD_TIME, lLifetime / 2 );
+    }
+
     /**
      * parse the JSON for a token
      *
@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.web;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import fr.paris.lutece.plugins.oauth2.business.AuthClientConf;
+import fr.paris.lutece.plugins.oauth2.business.AuthServerConf;
+import fr.paris.lutece.plugins.oauth2.jwt.JWTParser;
+import fr.paris.lutece.plugins.oauth2.jwt.TokenValidationException;
+import fr.paris.lutece.plugins.oauth2.service.MapperService;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+
+/**
+ * Filter protecting resources with JWT access tokens (resource server mode). The bearer token of the Authorization header is
+ * validated locally : its signature is verified with the keys of the server, kept in memory by the JWT parser, then its
+ * expiration, issuer and audience are checked. No call is made to the authorization server for a token signed with a known
+ * key. The claims of a valid token are available in the {@link #ATTRIBUTE_CLAIMS} request attribute.
+ * <p>
+ * Only asymmetric signatures are accepted, since a token signed with the client secret could have been forged by any holder
+ * of the secret. The audience is required and must differ from the client id, so that ID tokens are not accepted as access
+ * tokens.
+ * <p>
+ * Init parameters : audience (expected audience, required), serverConf, clientConf and jwtParser (bean names, optional),
+ * realm (optional).
+ * 
+ * @since 2.0.1
+ */
+public class BearerTokenFilter implements Filter
+{
+    /** Name of the request attribute holding the claims of the access token */
+    public static final String ATTRIBUTE_CLAIMS = "oauth2.accessTokenClaims";
+
+    private static final String PARAMETER_SERVER_CONF = "serverConf";
+    private static final String PARAMETER_CLIENT_CONF = "clientConf";
+    private static final String PARAMETER_JWT_PARSER = "jwtParser";
+    private static final String PARAMETER_AUDIENCE = "audience";
+    private static final String PARAMETER_REALM = "realm";
+    private static final String DEFAULT_SERVER_CONF = "oauth2.server";
+    private static final String DEFAULT_CLIENT_CONF = "oauth2.client";
+    private static final String DEFAULT_JWT_PARSER = "oauth2.jwtParser";
+    private static final String DEFAULT_REALM = "lutece";
+
+    private static final String HEADER_AUTHORIZATION = "Authorization";
+    private static final String HEADER_WWW_AUTHENTICATE = "WWW-Authenticate";
+    private static final String BEARER_PREFIX = "Bearer ";
+    private static final String HEADER_ALGORITHM = "alg";
+    private static final Set<String> ASYMMETRIC_ALGORITHMS = Set.of( "RS256", "RS384", "RS512", "PS256", "PS384", "PS512", "ES256", "ES384",
+            "ES512", "EdDSA" );
+    private static final String CLAIM_ISSUER = "iss";
+    private static final String CLAIM_AUDIENCE = "aud";
+    private static final String CLAIM_EXPIRATION = "exp";
+    private static final String CLAIM_NOT_BEFORE = "nbf";
+    private static final String ERROR_INVALID_TOKEN = "invalid_token";
+    private static final long CLOCK_SKEW = 60L;
+
+    private static Logger _logger = Logger.getLogger( Constants.LOGGER_OAUTH2 );
+
+    private JWTParser _jwtParser;
+    private AuthServerConf _authServerConf;
+    private AuthClientConf _authClientConf;
+    private String _strAudience;
+    private String _strRealm;
+
+    /**
+     * Constructor used by the servlet container. The configuration is read in {@link #init(FilterConfig)}.
+     */
+    public BearerTokenFilter( )
+    {
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param jwtParser
+     *            the JWT parser
+     * @param authServerConf
+     *            the server configuration
+     * @param authClientConf
+     *            the client configuration
+     * @param strAudience
+     *            the expected audience
+     * @param strRealm
+     *            the realm
+     * @throws IllegalArgumentException
+     *             if the audience is missing or is the client id
+     */
+    public BearerTokenFilter( JWTParser jwtParser, AuthServerConf authServerConf, AuthClientConf authClientConf, String strAudience, String strRealm )
+    {
+        checkAudience( strAudience, authClientConf );
+        _jwtParser = jwtParser;
+        _authServerConf = authServerConf;
+        _authClientConf = authClientConf;
+        _strAudience = strAudience;
+        _strRealm = strRealm;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void init( FilterConfig filterConfig ) throws ServletException
+    {
+        _authServerConf = SpringContextService.getBean( getInitParameter( filterConfig, PARAMETER_SERVER_CONF, DEFAULT_SERVER_CONF ) );
+        _authClientConf = SpringContextService.getBean( getInitParameter( filterConfig, PARAMETER_CLIENT_CONF, DEFAULT_CLIENT_CONF ) );
+        _jwtParser = SpringContextService.getBean( getInitParameter( filterConfig, PARAMETER_JWT_PARSER, DEFAULT_JWT_PARSER ) );
+        _strAudience = filterConfig.getInitParameter( PARAMETER_AUDIENCE );
+        _strRealm = getInitParameter( filterConfig, PARAMETER_REALM, DEFAULT_REALM );
+        try
+        {
+            checkAudience( _strAudience, _authClientConf );
+        }
+        catch( IllegalArgumentException e )
+        {
+            throw new ServletException( e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void doFilter( ServletRequest request, ServletResponse response, FilterChain chain ) throws IOException, ServletException
+    {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+
+        String strAuthorization = httpRequest.getHeader( HEADER_AUTHORIZATION );
+        if ( strAuthorization == null || !strAuthorization.regionMatches( true, 0, BEARER_PREFIX, 0, BEARER_PREFIX.length( ) ) )
+        {
+            httpResponse.setHeader( HEADER_WWW_AUTHENTICATE, "Bearer realm=\"" + _strRealm + "\"" );
+            httpResponse.sendError( HttpServletResponse.SC_UNAUTHORIZED );
+            return;
+        }
+
+        try
+        {
+            Map<String, Object> claims = validate( strAuthorization.substring( BEARER_PREFIX.length( ) ).trim( ) );
+            httpRequest.setAttribute( ATTRIBUTE_CLAIMS, claims );
+        }
+        catch( TokenValidationException e )
+        {
+            _logger.debug( "Invalid bearer token : " + e.getMessage( ) );
+            httpResponse.setHeader( HEADER_WWW_AUTHENTICATE,
+                    "Bearer realm=\"" + _strRealm + "\", error=\"" + ERROR_INVALID_TOKEN + "\", error_description=\"The access token is invalid\"" );
+            httpResponse.sendError( HttpServletResponse.SC_UNAUTHORIZED );
+            return;
+        }
+
+        chain.doFilter( request, response );
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void destroy( )
+    {
+        // nothing to do
+    }
+
+    /**
+     * Validate an access token
+     * 
+     * @param strJwt
+     *            the compact JWT
+     * @return the claims of the token
+     * @throws TokenValidationException
+     *             if the token is not valid
+     */
+    Map<String, Object> validate( String strJwt ) throws TokenValidationException
+    {
+        if ( StringUtils.isEmpty( strJwt ) || strJwt.endsWith( "." ) )
+        {
+            // unsigned tokens are never accepted as access tokens
+            throw new TokenValidationException( "The access token is not signed" );
+        }
+        String strAlgorithm = getAlgorithm( strJwt );
+        if ( strAlgorithm == null || !ASYMMETRIC_ALGORITHMS.contains( strAlgorithm ) )
+        {
+            throw new TokenValidationException( "Unexpected signature algorithm for an access token : " + strAlgorithm );
+        }
+
+        Map<String, Object> claims;
+        try
+        {
+            claims = _jwtParser.parseClaims( strJwt, _authClientConf, _authServerConf, _logger );
+        }
+        catch( RuntimeException e )
+        {
+            throw new TokenValidationException( e.getMessage( ), e );
+        }
+
+        Instant now = Instant.now( );
+        Instant expiration = getInstant( claims.get( CLAIM_EXPIRATION ) );
+        if ( expiration == null || expiration.plusSeconds( CLOCK_SKEW ).isBefore( now ) )
+        {
+            throw new TokenValidationException( "The access token is expired" );
+        }
+        Instant notBefore = getInstant( claims.get( CLAIM_NOT_BEFORE ) );
+        if ( notBefore != null && notBefore.minusSeconds( CLOCK_SKEW ).isAfter( now ) )
+        {
+            throw new TokenValidationException( "The access token is not yet valid" );
+        }
+        if ( _authServerConf.getIssuer( ) != null && !_authServerConf.getIssuer( ).equals( claims.get( CLAIM_ISSUER ) ) )
+        {
+            throw new TokenValidationException( "Unexpected issuer : " + claims.get( CLAIM_ISSUER ) );
+        }
+        if ( !hasAudience( claims.get( CLAIM_AUDIENCE ), _strAudience ) )
+        {
+            throw new TokenValidationException( "The access token is not intended for " + _strAudience );
+        }
+        return claims;
+    }
+
+    /**
+     * Checks the expected audience
+     * 
+     * @param strAudience
+     *            the expected audience
+     * @param authClientConf
+     *            the client configuration
+     * @throws IllegalArgumentException
+     *             if the audience is missing or is the client id, which is the audience of the ID tokens
+     */
+    private static void checkAudience( String strAudience, AuthClientConf authClientConf )
+    {
+        if ( StringUtils.isEmpty( strAudience ) )
+        {
+            throw new IllegalArgumentException( "BearerTokenFilter : the audience of the access tokens is required" );
+        }
+        if ( authClientConf != null && strAudience.equals( authClientConf.getClientId( ) ) )
+        {
+            throw new IllegalArgumentException( "BearerTokenFilter : the audience must differ from the client id, or ID tokens would be accepted" );
+        }
+    }
+
+    /**
+     * Reads the signature algorithm in the header of a compact JWT
+     * 
+     * @param strJwt
+     *            the compact JWT
+     * @return the algorithm
+     * @throws TokenValidationException
+     *             if the header can't be read
+     */
+    private static String getAlgorithm( String strJwt ) throws TokenValidationException
+    {
+        int nIndex = strJwt.indexOf( '.' );
+        if ( nIndex <= 0 )
+        {
+            throw new TokenValidationException( "The access token is not a JWT" );
+        }
+        try
+        {
+            String strHeader = new String( Base64.getUrlDecoder( ).decode( strJwt.substring( 0, nIndex ) ), StandardCharsets.UTF_8 );
+            Object algorithm = MapperService.parse( strHeader, Map.class ).get( HEADER_ALGORITHM );
+            return ( algorithm != null ) ? algorithm.toString( ) : null;
+        }
+        catch( IOException | IllegalArgumentException e )
+        {
+            throw new TokenValidationException( "The header of the access token is invalid", e );
+        }
+    }
+
+    /**
+     * Checks the audience claim
+     * 
+     * @param audience
+     *            the audience claim, a string or a collection of strings
+     * @param strExpectedAudience
+     *            the expected audience
+     * @return true if the expected audience is in the claim
+     */
+    private static boolean hasAudience( Object audience, String strExpectedAudience )
+    {
+        if ( audience instanceof Collection )
+        {
+            return ( (Collection<?>) audience ).contains( strExpectedAudience );
+        }
+        return strExpectedAudience.equals( audience );
+    }
+
+    /**
+     * Converts a date claim, which may be a date or a number of seconds since the epoch depending on the parser
+     * 
+     * @param value
+     *            the claim value
+     * @return the instant, or null if the claim is missing
+     */
+    private static Instant getInstant( Object value )
+    {
+        if ( value instanceof Date )
+        {
+            return ( (Date) value ).toInstant( );
+        }
+        if ( value instanceof Number )
+        {
+            return Instant.ofEpochSecond( ( (Number) value ).longValue( ) );
+        }
+        return null;
+    }
+
+    /**
+     * Gets an init parameter
+     * 
+     * @param filterConfig
+     *            the filter configuration
+     * @param strName
+     *            the parameter name
+     * @param strDefault
+     *            the default value
+     * @return the value of the parameter, or the default value
+     */
+    private static String getInitParameter( FilterConfig filterConfig, String strName, String strDefault )
+    {
+        String strValue = filterConfig.getInitParameter( strName );
+        return StringUtils.isNotEmpty( strValue ) ? strValue : strDefault;
+    }
+}
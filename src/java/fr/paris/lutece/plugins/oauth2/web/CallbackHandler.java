@@ -49,13 +49,19 @@ import org.apache.log4j.Logger;
 
 import fr.paris.lutece.plugins.oauth2.business.AuthClientConf;
 import fr.paris.lutece.plugins.oauth2.business.AuthServerConf;
+import fr.paris.lutece.plugins.oauth2.business.FlowState;
 import fr.paris.lutece.plugins.oauth2.business.Token;
 import fr.paris.lutece.plugins.oauth2.dataclient.DataClient;
 import fr.paris.lutece.plugins.oauth2.jwt.JWTParser;
 import fr.paris.lutece.plugins.oauth2.jwt.TokenValidationException;
 import fr.paris.lutece.plugins.oauth2.service.DataClientService;
+import fr.paris.lutece.plugins.oauth2.service.FlowStateStore;
 import fr.paris.lutece.plugins.oauth2.service.PkceUtil;
+import fr.paris.lutece.plugins.oauth2.service.SessionFlowStateStore;
+import fr.paris.lutece.plugins.oauth2.service.TokenRefreshListener;
+import fr.paris.lutece.plugins.oauth2.service.TokenRefreshService;
 import fr.paris.lutece.plugins.oauth2.service.TokenService;
+import fr.paris.lutece.plugins.oauth2.service.TokenStore;
 import fr.paris.lutece.portal.service.util.AppLogService;
 import fr.paris.lutece.portal.service.util.AppPathService;
 import fr.paris.lutece.portal.service.util.AppPropertiesService;
@@ -69,6 +75,7 @@ import fr.paris.lutece.util.url.UrlItem;
 public class CallbackHandler implements Serializable
 {
     private static final String PROPERTY_ERROR_PAGE = "oauth2.error.page";
+    private static final String CODE_CHALLENGE_METHOD_S256 = "S256";
     private static final long serialVersionUID = 1L;
     private static Logger _logger = Logger.getLogger( Constants.LOGGER_OAUTH2 );
     private String _handlerName;
@@ -76,6 +83,9 @@ public class CallbackHandler implements Serializable
     private AuthClientConf _authClientConf;
     private JWTParser _jWTParser;
     private boolean _bDefault;
+    private TokenStore _tokenStore;
+    private TokenRefreshService _tokenRefreshService;
+    private FlowStateStore _flowStateStore = new SessionFlowStateStore( );
 
     /**
      * @return the authServerConf
@@ -188,8 +198,6 @@ public class CallbackHandler implements Serializable
     {
         try
         {
-            HttpSession session = request.getSession( true );
-
             DataClient dataClient = DataClientService.instance( ).getClient( request );
 
             UrlItem url = new UrlItem( _authServerConf.getAuthorizationEndpointUri( ) );
@@ -197,14 +205,13 @@ public class CallbackHandler implements Serializable
             url.addParameter( Constants.PARAMETER_RESPONSE_TYPE, Constants.RESPONSE_TYPE_CODE );
             url.addParameter( Constants.PARAMETER_REDIRECT_URI, URLEncoder.encode( generateRedirectUrl( request, dataClient ), "UTF-8" ) );
             url.addParameter( Constants.PARAMETER_SCOPE, dataClient.getScopes( ) );
-            url.addParameter( Constants.PARAMETER_STATE, createState( session ) );
-            url.addParameter( Constants.PARAMETER_NONCE, createNonce( session ) );
-            if(_authClientConf.isPkce())
+            FlowState flowState = createFlowState( dataClient );
+            url.addParameter( Constants.PARAMETER_STATE, _flowStateStore.put( request, response, flowState ) );
+            url.addParameter( Constants.PARAMETER_NONCE, flowState.getNonce( ) );
+            if ( flowState.getCodeVerifier( ) != null )
             {
-            	String strCodeVerifier=createCodeVerifier(session);
-            	String strCodeChallenge=createCodeChallenge(strCodeVerifier, session);
-            	url.addParameter(Constants.PARAMETER_CODE_CHALLENGE,strCodeChallenge);
-            	url.addParameter(Constants.PARAMETER_CODE_CHALLENGE_METHOD,"S256");
+                url.addParameter( Constants.PARAMETER_CODE_CHALLENGE, generateCodeChallenge( flowState.getCodeVerifier( ) ) );
+                url.addParameter( Constants.PARAMETER_CODE_CHALLENGE_METHOD, CODE_CHALLENGE_METHOD_S256 );
             }
             
             
@@ -246,7 +253,8 @@ public class CallbackHandler implements Serializable
         _logger.info( "OAuth Authorization code received : " + SecurityUtil.logForgingProtect( strCode ) );
 
         // Check valid state
-        if ( !checkState( request ) )
+        FlowState flowState = takeFlowState( request, response );
+        if ( flowState == null )
         {
             handleError( request, response, Constants.ERROR_TYPE_INVALID_STATE );
 
@@ -255,10 +263,11 @@ public class CallbackHandler implements Serializable
 
         try
         {
-            HttpSession session = request.getSession( );
-            DataClient dataClient = DataClientService.instance( ).getClient( request );
+            DataClient dataClient = getFlowStateDataClient( request, flowState );
             String strRedirectUri = generateRedirectUrl( request, dataClient );
-            Token token = getToken( strRedirectUri, strCode, session );
+            Token token = getToken( strRedirectUri, strCode, request.getSession( false ), flowState.getNonce( ), flowState.getCodeVerifier( ) );
+            String strTokenKey = storeToken( request, token );
+            trackToken( request, token, strTokenKey );
             dataClient.handleToken( token, request, response );
         }
         catch( IOException ex )
@@ -290,6 +299,10 @@ public class CallbackHandler implements Serializable
      *            The authorization code
      * @param session
      *            The HTTP session
+     * @param strNonce
+     *            The nonce sent with the authorization request
+     * @param strCodeVerifier
+     *            The PKCE code verifier
      * @return The token
      * @throws IOException
      *             if an error occurs
@@ -298,239 +311,262 @@ public class CallbackHandler implements Serializable
      * @throws TokenValidationException
      *             If the token validation failed
      */
-    private Token getToken( String strRedirectUri, String strAuthorizationCode, HttpSession session )
+    private Token getToken( String strRedirectUri, String strAuthorizationCode, HttpSession session, String strNonce, String strCodeVerifier )
             throws IOException, HttpAccessException, TokenValidationException
     {
 
         return TokenService.getService( ).getToken( strRedirectUri, _authClientConf, _authServerConf, strAuthorizationCode, session, _jWTParser,
-                getStoredNonce( session ),getStoredCodeVerifier(session) );
+                strNonce, strCodeVerifier );
 
     }
 
-    ////////////////////////////////////////////////////////////////////////////
-    // Check and trace utils
-
     /**
-     * Create a cryptographically random nonce and store it in the session
-     *
-     * @param session
-     *            The session
-     * @return The nonce
+     * Create the values of an authorization flow
+     * 
+     * @param dataClient
+     *            The data client
+     * @return The flow state
+     * @throws IOException
+     *             if the PKCE code verifier can't be generated
      */
-    private String createNonce( HttpSession session )
-    {
-        String nonce = new BigInteger( 128, new SecureRandom( ) ).toString( 16 );
-        session.setAttribute( getNonceAttributeSessionName( ), nonce );
+    private FlowState createFlowState( DataClient dataClient ) throws IOException
+    {
+        FlowState flowState = new FlowState( );
+        flowState.setState( createRandomValue( ) );
+        flowState.setNonce( createRandomValue( ) );
+        flowState.setDataClientName( dataClient.getName( ) );
+        flowState.setHandlerName( getHandlerName( ) );
+        flowState.setCreationTime( System.currentTimeMillis( ) );
+        if ( _authClientConf.isPkce( ) )
+        {
+            flowState.setCodeVerifier( PkceUtil.generateCodeVerifier( ) );
+        }
 
-        return nonce;
+        return flowState;
     }
-    
-    
+
     /**
-     * Create a cryptographically random nonce and store it in the session
-     *
-     * @param session
-     *            The session
-     * @return The nonce
+     * Take the values of the authorization flow of a callback from the flow state store, checking the state and the handler
+     * 
+     * @param request
+     *            The HTTP request
+     * @param response
+     *            The HTTP response
+     * @return The flow state, or null if it is missing or invalid
      */
-    private String createCodeChallenge(String strCodeVerifier,HttpSession session )
+    private FlowState takeFlowState( HttpServletRequest request, HttpServletResponse response )
     {
-        
-    	String strChallenge=null;
-		try {
-			if(strCodeVerifier!=null)
-			{
-				strChallenge = PkceUtil.generateCodeChallenge(strCodeVerifier);
-			}
-		} catch (UnsupportedEncodingException|NoSuchAlgorithmException  e) {
-			AppLogService.error(e);
-		}
-    			
-        session.setAttribute( getCodeChallengeAttributeSessionName(), strChallenge );
+        String strState = request.getParameter( Constants.PARAMETER_STATE );
+        FlowState flowState = _flowStateStore.take( request, response, getHandlerName( ), strState );
+        if ( flowState == null || !StringUtils.equals( flowState.getHandlerName( ), getHandlerName( ) ) )
+        {
+            _logger.debug( "Bad state returned by server : " + SecurityUtil.logForgingProtect( strState ) );
+
+            return null;
+        }
 
-        return strChallenge;
+        return flowState;
     }
-    
+
     /**
-     * Create a cryptographically random nonce and store it in the session
-     *
-     * @param session
-     *            The session
-     * @return The nonce
+     * Get the data client of a flow state
+     * 
+     * @param request
+     *            The HTTP request
+     * @param flowState
+     *            The flow state
+     * @return The data client
      */
-    private String createCodeVerifier( HttpSession session )
+    private DataClient getFlowStateDataClient( HttpServletRequest request, FlowState flowState )
     {
-        String StrCodeVerifier=null;
-		try {
-			StrCodeVerifier = PkceUtil.generateCodeVerifier();
-		} catch (UnsupportedEncodingException e) {
-			AppLogService.error(e);
-		}
-        session.setAttribute( getCodeVerifierAttributeSessionName(), StrCodeVerifier );
+        DataClient dataClient = ( flowState.getDataClientName( ) != null ) ? DataClientService.instance( ).getClient( flowState.getDataClientName( ) ) : null;
 
-        return StrCodeVerifier;
+        return ( dataClient != null ) ? dataClient : DataClientService.instance( ).getClient( request );
     }
-    
-    
 
     /**
-     * Get the store code verifier 
-     *
-     * @param session
-     *            The session
-     * @return The stored nonce
+     * Keep the token in the token store, if any, under a key made of the handler name and of a random value kept in the session,
+     * so that neither the sessions of a same user nor the handlers share their tokens
+     * 
+     * @param request
+     *            The HTTP request
+     * @param token
+     *            The token
+     * @return the key of the token in the store, or null if the token is not stored
      */
-    private String getStoredCodeVerifier( HttpSession session )
+    private String storeToken( HttpServletRequest request, Token token )
     {
-        return getStoredSessionString( session, getCodeVerifierAttributeSessionName() );
+        if ( _tokenStore == null || token == null )
+        {
+            return null;
+        }
+        HttpSession session = request.getSession( true );
+        String strSessionKey = (String) session.getAttribute( getTokenKeyAttributeName( ) );
+        if ( strSessionKey == null )
+        {
+            strSessionKey = createRandomValue( );
+            session.setAttribute( getTokenKeyAttributeName( ), strSessionKey );
+        }
+        String strKey = getTokenStoreKey( strSessionKey );
+        _tokenStore.put( strKey, token );
+        return strKey;
     }
-    
-    
+
     /**
-     * Get the store code verifier 
-     *
-     * @param session
-     *            The session
-     * @return The stored nonce
+     * Gets the token kept in the token store for the session of the request
+     * 
+     * @param request
+     *            The HTTP request
+     * @return the token, or null if there is no token store or no token for this session
+     * @since 2.0.1
      */
-    private String getStoredCodeChallenge( HttpSession session )
+    public Token getStoredToken( HttpServletRequest request )
     {
-        return getStoredSessionString( session, getCodeChallengeAttributeSessionName() );
+        String strSessionKey = getSessionTokenKey( request );
+        return ( strSessionKey != null ) ? _tokenStore.get( getTokenStoreKey( strSessionKey ) ) : null;
     }
-    
-    
-    
-    
+
     /**
-     * Get the nonce we stored in the session
-     *
-     * @param session
-     *            The session
-     * @return The stored nonce
+     * Removes the token kept in the token store for the session of the request, for instance on logout
+     * 
+     * @param request
+     *            The HTTP request
+     * @since 2.0.1
      */
-    private String getStoredNonce( HttpSession session )
+    public void removeStoredToken( HttpServletRequest request )
     {
-        return getStoredSessionString( session, getNonceAttributeSessionName( ) );
+        String strSessionKey = getSessionTokenKey( request );
+        if ( strSessionKey != null )
+        {
+            _tokenStore.remove( getTokenStoreKey( strSessionKey ) );
+            request.getSession( ).removeAttribute( getTokenKeyAttributeName( ) );
+        }
     }
-    
-    
 
     /**
+     * Gets the random value identifying the tokens of the session of the request in the token store
      * 
-     * @return the attribute name who store nonced
+     * @param request
+     *            The HTTP request
+     * @return the value, or null if there is no token store or no token for this session
      */
-    private String getNonceAttributeSessionName( )
+    private String getSessionTokenKey( HttpServletRequest request )
     {
-
-        return getHandlerName( ) == null ? Constants.NONCE_SESSION_VARIABLE : getHandlerName( ) + Constants.NONCE_SESSION_VARIABLE;
+        HttpSession session = request.getSession( false );
+        return ( _tokenStore != null && session != null ) ? (String) session.getAttribute( getTokenKeyAttributeName( ) ) : null;
     }
-    
+
     /**
+     * Gets the key of a token in the token store
      * 
-     * @return the attribute name who store the verifier code
+     * @param strSessionKey
+     *            the random value kept in the session
+     * @return the key
      */
-    private String getCodeVerifierAttributeSessionName( )
+    private String getTokenStoreKey( String strSessionKey )
     {
-
-        return getHandlerName( ) == null ? Constants.CODE_VERIFIER_SESSION_VARIABLE : getHandlerName( ) + Constants.CODE_VERIFIER_SESSION_VARIABLE;
+        return StringUtils.defaultString( _handlerName ) + ':' + strSessionKey;
     }
-    
-    
+
     /**
+     * Gets the name of the session attribute holding the key of the stored tokens
      * 
-     * @return the attribute name who store the challenge attribute
+     * @return the attribute name
      */
-    private String getCodeChallengeAttributeSessionName( )
+    private String getTokenKeyAttributeName( )
     {
-
-        return getHandlerName( ) == null ? Constants.CODE_CHALLENGE_SESSION_VARIABLE : getHandlerName( ) + Constants.CODE_CHALLENGE_SESSION_VARIABLE;
+        return StringUtils.isEmpty( _handlerName ) ? Constants.TOKEN_KEY_SESSION_VARIABLE : _handlerName + Constants.TOKEN_KEY_SESSION_VARIABLE;
     }
 
-    
-    
-
     /**
-     * check state returned by Oauth2 to the callback uri
+     * Track the token with the refresh service, if any, so that it is refreshed in background. The registration is kept in the
+     * session to stop the tracking when the session ends, and replaces the one of a previous login in the same session.
      * 
      * @param request
      *            The HTTP request
-     * @return True if the state is valid
+     * @param token
+     *            The token
+     * @param strTokenKey
+     *            The key of the token in the token store, or null if it is not stored
      */
-    private boolean checkState( HttpServletRequest request )
+    private void trackToken( HttpServletRequest request, Token token, String strTokenKey )
     {
-        String strState = request.getParameter( Constants.PARAMETER_STATE );
-        HttpSession session = request.getSession( );
-        String strStored = getStoredState( session );
-        boolean bCheck = ( ( strState == null ) || strState.equals( strStored ) );
-
-        if ( !bCheck )
+        if ( _tokenRefreshService == null || !_tokenRefreshService.isEnabled( ) )
         {
-            _logger.debug( "Bad state returned by server : " + SecurityUtil.logForgingProtect( strState ) + " while expecting : " + strStored );
+            return;
+        }
+        TokenStore tokenStore = _tokenStore;
+        TokenRefreshListener listener = newToken -> {
+            if ( tokenStore != null && strTokenKey != null )
+            {
+                tokenStore.put( strTokenKey, newToken );
+            }
+        };
+        TokenRefreshService.Registration registration = _tokenRefreshService.register( token, _authClientConf, _authServerConf, listener );
+        if ( registration != null )
+        {
+            request.getSession( true ).setAttribute( getTokenRefreshAttributeName( ), registration );
         }
-
-        return bCheck;
     }
 
     /**
-     * Create a cryptographically random state and store it in the session
-     *
-     * @param session
-     *            The session
-     * @return The state
+     * Gets the name of the session attribute holding the registration of the refreshed token
+     * 
+     * @return the attribute name
      */
-    private String createState( HttpSession session )
+    private String getTokenRefreshAttributeName( )
     {
-        String strState = new BigInteger( 128, new SecureRandom( ) ).toString( 16 );
-        session.setAttribute( getStateAttributeSessionName( ), strState );
-
-        return strState;
+        return StringUtils.isEmpty( _handlerName ) ? Constants.TOKEN_REFRESH_SESSION_VARIABLE : _handlerName + Constants.TOKEN_REFRESH_SESSION_VARIABLE;
     }
 
     /**
+     * Gets the last token refreshed in background for the session of the request
      * 
-     * @return the attribute name who store the sate
+     * @param request
+     *            The HTTP request
+     * @return the last token, or null if the token of the session is not refreshed in background
+     * @since 2.0.1
      */
-    private String getStateAttributeSessionName( )
+    public Token getRefreshedToken( HttpServletRequest request )
     {
-
-        return getHandlerName( ) == null ? Constants.STATE_SESSION_VARIABLE : getHandlerName( ) + Constants.STATE_SESSION_VARIABLE;
+        HttpSession session = request.getSession( false );
+        Object registration = ( session != null ) ? session.getAttribute( getTokenRefreshAttributeName( ) ) : null;
+        return ( registration instanceof TokenRefreshService.Registration ) ? ( (TokenRefreshService.Registration) registration ).getToken( ) : null;
     }
 
-    /**
-     * Get the state we stored in the session
-     *
-     * @param session
-     *            The session
-     * @return The stored state
-     */
-    private String getStoredState( HttpSession session )
-    {
-        return getStoredSessionString( session, getStateAttributeSessionName( ) );
-    }
+    ////////////////////////////////////////////////////////////////////////////
+    // Check and trace utils
 
     /**
-     * Get the named stored session variable as a string. Return null if not found or not a string.
+     * Generate the PKCE code challenge of a code verifier
      *
-     * @param session
-     *            The session
-     * @param strKey
-     *            The key
-     * @return The session string
+     * @param strCodeVerifier
+     *            The code verifier
+     * @return The code challenge or null if it can't be generated
      */
-    private static String getStoredSessionString( HttpSession session, String strKey )
+    private static String generateCodeChallenge( String strCodeVerifier )
     {
-        Object object = session.getAttribute( strKey );
-
-        if ( ( object != null ) && object instanceof String )
+        try
         {
-            return object.toString( );
+            return PkceUtil.generateCodeChallenge( strCodeVerifier );
         }
-        else
+        catch( UnsupportedEncodingException | NoSuchAlgorithmException e )
         {
+            AppLogService.error( e );
             return null;
         }
     }
 
+    /**
+     * Create a cryptographically random value
+     *
+     * @return The value
+     */
+    private static String createRandomValue( )
+    {
+        return new BigInteger( 128, new SecureRandom( ) ).toString( 16 );
+    }
+
     /**
      * get the handler Name
      * 
@@ -590,6 +626,69 @@ public class CallbackHandler implements Serializable
         this._bDefault = _bDefault;
     }
 
+    /**
+     * 
+     * @return the token store
+     * @since 2.0.1
+     */
+    public TokenStore getTokenStore( )
+    {
+        return _tokenStore;
+    }
+
+    /**
+     * 
+     * @param tokenStore
+     *            the store in which the tokens are kept, under the handler name and a random value kept in the session
+     * @since 2.0.1
+     */
+    public void setTokenStore( TokenStore tokenStore )
+    {
+        _tokenStore = tokenStore;
+    }
+
+    /**
+     * 
+     * @return the service refreshing the tokens in background
+     * @since 2.0.1
+     */
+    public TokenRefreshService getTokenRefreshService( )
+    {
+        return _tokenRefreshService;
+    }
+
+    /**
+     * 
+     * @param tokenRefreshService
+     *            the service refreshing the tokens in background, the refreshed tokens replace the ones of the token store
+     * @since 2.0.1
+     */
+    public void setTokenRefreshService( TokenRefreshService tokenRefreshService )
+    {
+        _tokenRefreshService = tokenRefreshService;
+    }
+
+    /**
+     * 
+     * @return the store of the authorization flow values
+     * @since 2.0.1
+     */
+    public FlowStateStore getFlowStateStore( )
+    {
+        return _flowStateStore;
+    }
+
+    /**
+     * 
+     * @param flowStateStore
+     *            the store of the authorization flow values (state, nonce, PKCE code verifier, ...), the session by default
+     * @since 2.0.1
+     */
+    public void setFlowStateStore( FlowStateStore flowStateStore )
+    {
+        _flowStateStore = flowStateStore;
+    }
+
     private void addComplementaryParameters( UrlItem url, HttpServletRequest request )
     {
         String[] strComplementaryParams = request.getParameterValues( Constants.PARAMETER_COMPLEMENTARY_PARAMETER );
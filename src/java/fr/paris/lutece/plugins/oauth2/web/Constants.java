@@ -58,17 +58,25 @@ public final class Constants
     public static final String PARAMETER_CODE_CHALLENGE = "code_challenge";
     public static final String PARAMETER_CODE_CHALLENGE_METHOD = "code_challenge_method";
     public static final String PARAMETER_CODE_VERIFIER = "code_verifier";
+    public static final String PARAMETER_TOKEN = "token";
+    public static final String PARAMETER_TOKEN_TYPE_HINT = "token_type_hint";
         
 
     public static final String PARAMETER_HANDLER_NAME = "handler_name";
     public static final String PARAMETER_ACR_VALUES = "acr_values";
     public static final String GRANT_TYPE_AUTHORIZATION_CODE = "authorization_code";
     public static final String GRANT_TYPE_REFRESH_TOKEN = "refresh_token";
+    public static final String GRANT_TYPE_CLIENT_CREDENTIALS = "client_credentials";
+    public static final String TOKEN_TYPE_HINT_ACCESS_TOKEN = "access_token";
+    public static final String TOKEN_TYPE_HINT_REFRESH_TOKEN = "refresh_token";
 
     public static final String STATE_SESSION_VARIABLE = "state";
     public static final String NONCE_SESSION_VARIABLE = "nonce";
     public static final String CODE_VERIFIER_SESSION_VARIABLE = "code_verifier";
     public static final String CODE_CHALLENGE_SESSION_VARIABLE = "code_challenge";
+    public static final String FLOW_STATE_SESSION_VARIABLE = "flow_state";
+    public static final String TOKEN_REFRESH_SESSION_VARIABLE = "token_refresh";
+    public static final String TOKEN_KEY_SESSION_VARIABLE = "token_key";
     
     public static final String CLAIM_NONCE = "nonce";
     public static final String CLAIM_IDP = "idp";
@@ -33,15 +33,34 @@
  */
 package fr.paris.lutece.plugins.oauth2.web;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.log4j.Logger;
+
+import fr.paris.lutece.plugins.oauth2.service.AsyncExecutorService;
 import fr.paris.lutece.plugins.oauth2.service.CallbackHandlerService;
 import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
 import fr.paris.lutece.util.http.SecurityUtil;
 
 /**
@@ -51,6 +70,18 @@ public class OAuthCallbackServlet extends HttpServlet
 {
     private static final long serialVersionUID = 2L;
 
+    private static final String PROPERTY_ASYNC_ENABLED = "oauth2.callback.async.enabled";
+    private static final String PROPERTY_ASYNC_TIMEOUT = "oauth2.callback.async.timeout";
+    private static final String PROPERTY_ASYNC_POOL_SIZE = "oauth2.callback.async.poolSize";
+    private static final String PROPERTY_ASYNC_QUEUE_SIZE = "oauth2.callback.async.queueSize";
+    private static final long DEFAULT_ASYNC_TIMEOUT = 30000L;
+    private static final int DEFAULT_ASYNC_POOL_SIZE = 20;
+    private static final int DEFAULT_ASYNC_QUEUE_SIZE = 100;
+    private static final String THREAD_NAME_PREFIX = "oauth2-callback-";
+
+    private static Logger _logger = Logger.getLogger( Constants.LOGGER_OAUTH2 );
+    private static ExecutorService _executor;
+
     /**
      * {@inheritDoc }
      */
@@ -70,7 +101,391 @@ public class OAuthCallbackServlet extends HttpServlet
             return;
         }
 
-        handler.handle( request, response );
+        if ( request.getParameter( Constants.PARAMETER_CODE ) != null && isAsyncEnabled( request ) )
+        {
+            handleAsync( handler, request, response );
+        }
+        else
+        {
+            handler.handle( request, response );
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void destroy( )
+    {
+        shutdownExecutor( );
+        super.destroy( );
+    }
+
+    /**
+     * Checks if the callback can be processed asynchronously
+     * 
+     * @param request
+     *            The HTTP request
+     * @return true if the async mode is enabled and supported by the request
+     */
+    private boolean isAsyncEnabled( HttpServletRequest request )
+    {
+        return AppPropertiesService.getPropertyBoolean( PROPERTY_ASYNC_ENABLED, false ) && request.isAsyncSupported( );
+    }
+
+    /**
+     * Gets the executor of the asynchronous callbacks, a bounded pool dedicated to the callbacks created on first use
+     * 
+     * @return the executor
+     */
+    private static synchronized ExecutorService getExecutor( )
+    {
+        if ( _executor == null )
+        {
+            _executor = AsyncExecutorService.createBoundedExecutor( THREAD_NAME_PREFIX,
+                    AppPropertiesService.getPropertyInt( PROPERTY_ASYNC_POOL_SIZE, DEFAULT_ASYNC_POOL_SIZE ),
+                    AppPropertiesService.getPropertyInt( PROPERTY_ASYNC_QUEUE_SIZE, DEFAULT_ASYNC_QUEUE_SIZE ) );
+        }
+        return _executor;
+    }
+
+    /**
+     * Shuts down the executor of the asynchronous callbacks, so that its threads don't outlive the webapp
+     */
+    private static synchronized void shutdownExecutor( )
+    {
+        if ( _executor != null )
+        {
+            AsyncExecutorService.shutdown( _executor );
+            _executor = null;
+        }
+    }
+
+    /**
+     * Detaches the request from the container thread and runs the handler on a dedicated pool, so that the calls to the
+     * authorization server do not hold a request thread
+     * 
+     * @param handler
+     *            The callback handler
+     * @param request
+     *            The HTTP request
+     * @param response
+     *            The HTTP response
+     */
+    private void handleAsync( CallbackHandler handler, HttpServletRequest request, HttpServletResponse response )
+    {
+        AsyncContext asyncContext = request.startAsync( request, response );
+        asyncContext.setTimeout( AppPropertiesService.getPropertyLong( PROPERTY_ASYNC_TIMEOUT, DEFAULT_ASYNC_TIMEOUT ) );
+
+        AsyncCallback callback = new AsyncCallback( asyncContext, request, response );
+        asyncContext.addListener( callback );
+
+        try
+        {
+            callback.setFuture( getExecutor( ).submit( ( ) -> callback.process( handler ) ) );
+        }
+        catch( RejectedExecutionException e )
+        {
+            _logger.error( "OAuthCallbackServlet: too many pending callbacks, the request is rejected" );
+            callback.complete( HttpServletResponse.SC_SERVICE_UNAVAILABLE );
+        }
+    }
+
+    /**
+     * Callback processed asynchronously. The processing task only reaches the request and the response through guards which
+     * fail once the callback is completed, so that it never touches them after a timeout, once the container may have recycled
+     * them. The body written by the task is buffered and written when the task completes the callback.
+     */
+    private static final class AsyncCallback implements AsyncListener
+    {
+        private final AsyncContext _asyncContext;
+        private final HttpServletRequest _request;
+        private final HttpServletResponse _response;
+        private final ByteArrayOutputStream _body = new ByteArrayOutputStream( );
+        private PrintWriter _writer;
+        private ServletOutputStream _outputStream;
+        private boolean _bCompleted;
+        private volatile Future<?> _future;
+
+        /**
+         * Constructor
+         * 
+         * @param asyncContext
+         *            the async context
+         * @param request
+         *            the HTTP request
+         * @param response
+         *            the HTTP response
+         */
+        AsyncCallback( AsyncContext asyncContext, HttpServletRequest request, HttpServletResponse response )
+        {
+            _asyncContext = asyncContext;
+            _request = request;
+            _response = response;
+        }
+
+        /**
+         * Sets the processing task, cancelled if the callback times out
+         * 
+         * @param future
+         *            the processing task
+         */
+        void setFuture( Future<?> future )
+        {
+            _future = future;
+        }
+
+        /**
+         * Processes the callback
+         * 
+         * @param handler
+         *            the callback handler
+         */
+        void process( CallbackHandler handler )
+        {
+            try
+            {
+                handler.handle( guard( HttpServletRequest.class, _request ), guard( HttpServletResponse.class, _response ) );
+            }
+            catch( RuntimeException e )
+            {
+                if ( isCompleted( ) )
+                {
+                    _logger.debug( "OAuthCallbackServlet: callback processing stopped after its completion : " + e.getMessage( ) );
+                    return;
+                }
+                _logger.error( "OAuthCallbackServlet: error while handling the callback", e );
+                complete( HttpServletResponse.SC_INTERNAL_SERVER_ERROR );
+                return;
+            }
+            complete( 0 );
+        }
+
+        /**
+         * Completes the callback, if it is not already completed
+         * 
+         * @param nErrorStatus
+         *            the error status, or 0 to write the buffered body
+         */
+        synchronized void complete( int nErrorStatus )
+        {
+            if ( _bCompleted )
+            {
+                return;
+            }
+            _bCompleted = true;
+            try
+            {
+                if ( nErrorStatus != 0 )
+                {
+                    if ( !_response.isCommitted( ) )
+                    {
+                        _response.setStatus( nErrorStatus );
+                    }
+                }
+                else
+                {
+                    if ( _writer != null )
+                    {
+                        _writer.flush( );
+                    }
+                    if ( _body.size( ) > 0 )
+                    {
+                        _response.getOutputStream( ).write( _body.toByteArray( ) );
+                    }
+                }
+            }
+            catch( IOException | RuntimeException e )
+            {
+                _logger.error( "OAuthCallbackServlet: unable to write the response of the callback", e );
+            }
+            finally
+            {
+                _asyncContext.complete( );
+            }
+        }
+
+        /**
+         * @return true if the callback is completed
+         */
+        private synchronized boolean isCompleted( )
+        {
+            return _bCompleted;
+        }
+
+        /**
+         * Cancels the processing task
+         */
+        private void cancel( )
+        {
+            Future<?> future = _future;
+            if ( future != null )
+            {
+                future.cancel( true );
+            }
+        }
+
+        /**
+         * Creates a guard of the request or of the response
+         * 
+         * @param <T>
+         *            the type of the guarded object
+         * @param type
+         *            the interface of the guarded object
+         * @param target
+         *            the guarded object
+         * @return the guard
+         */
+        private <T> T guard( Class<T> type, T target )
+        {
+            return type.cast( Proxy.newProxyInstance( type.getClassLoader( ), new Class<?> [ ] {
+                    type
+            }, ( proxy, method, args ) -> invokeGuarded( target, method, args ) ) );
+        }
+
+        /**
+         * Invokes a method of the request or of the response, if the callback is not completed. The body of the response is
+         * buffered.
+         * 
+         * @param target
+         *            the request or the response
+         * @param method
+         *            the method
+         * @param args
+         *            the arguments
+         * @return the result
+         * @throws Throwable
+         *             the exception thrown by the method, or an IllegalStateException if the callback is completed
+         */
+        private synchronized Object invokeGuarded( Object target, Method method, Object [ ] args ) throws Throwable
+        {
+            if ( method.getDeclaringClass( ) != Object.class )
+            {
+                if ( _bCompleted )
+                {
+                    throw new IllegalStateException( "The callback has already been completed" );
+                }
+                if ( target == _response && "getOutputStream".equals( method.getName( ) ) )
+                {
+                    return getBufferedOutputStream( );
+                }
+                if ( target == _response && "getWriter".equals( method.getName( ) ) )
+                {
+                    return getBufferedWriter( );
+                }
+            }
+            try
+            {
+                return method.invoke( target, args );
+            }
+            catch( InvocationTargetException e )
+            {
+                throw e.getCause( );
+            }
+        }
+
+        /**
+         * @return the output stream buffering the body
+         */
+        private ServletOutputStream getBufferedOutputStream( )
+        {
+            if ( _outputStream == null )
+            {
+                _outputStream = new ServletOutputStream( )
+                {
+                    @Override
+                    public void write( int b )
+                    {
+                        _body.write( b );
+                    }
+
+                    @Override
+                    public void write( byte [ ] b, int off, int len )
+                    {
+                        _body.write( b, off, len );
+                    }
+
+                    @Override
+                    public boolean isReady( )
+                    {
+                        return true;
+                    }
+
+                    @Override
+                    public void setWriteListener( WriteListener writeListener )
+                    {
+                        // the buffer is always ready
+                        try
+                        {
+                            writeListener.onWritePossible( );
+                        }
+                        catch( IOException e )
+                        {
+                            writeListener.onError( e );
+                        }
+                    }
+                };
+            }
+            return _outputStream;
+        }
+
+        /**
+         * @return the writer buffering the body
+         */
+        private PrintWriter getBufferedWriter( )
+        {
+            if ( _writer == null )
+            {
+                _writer = new PrintWriter( new OutputStreamWriter( _body, Charset.forName( _response.getCharacterEncoding( ) ) ) );
+            }
+            return _writer;
+        }
+
+        /**
+         * {@inheritDoc }
+         */
+        @Override
+        public void onTimeout( AsyncEvent event ) throws IOException
+        {
+            if ( !isCompleted( ) )
+            {
+                _logger.error( "OAuthCallbackServlet: timeout while handling the callback" );
+                cancel( );
+                complete( HttpServletResponse.SC_GATEWAY_TIMEOUT );
+            }
+        }
+
+        /**
+         * {@inheritDoc }
+         */
+        @Override
+        public void onError( AsyncEvent event ) throws IOException
+        {
+            if ( !isCompleted( ) )
+            {
+                _logger.error( "OAuthCallbackServlet: error while handling the callback", event.getThrowable( ) );
+                cancel( );
+                complete( HttpServletResponse.SC_INTERNAL_SERVER_ERROR );
+            }
+        }
+
+        /**
+         * {@inheritDoc }
+         */
+        @Override
+        public synchronized void onComplete( AsyncEvent event ) throws IOException
+        {
+            _bCompleted = true;
+        }
+
+        /**
+         * {@inheritDoc }
+         */
+        @Override
+        public void onStartAsync( AsyncEvent event ) throws IOException
+        {
+            // nothing to do
+        }
     }
 
 }
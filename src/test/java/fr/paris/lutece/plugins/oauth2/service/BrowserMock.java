@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.service;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import fr.paris.lutece.plugins.oauth2.business.FlowState;
+
+/**
+ * Browser keeping its cookies and its session between the requests, used by the flow state store tests
+ */
+final class BrowserMock
+{
+    private final Map<String, String> _mapCookies = new HashMap<>( );
+    private final Map<String, Object> _mapSessionAttributes = new HashMap<>( );
+    private HttpSession _session;
+
+    /**
+     * Create a flow state
+     * 
+     * @param strState
+     *            the state
+     * @param lCreationTime
+     *            the creation time
+     * @return the flow state
+     */
+    static FlowState createFlowState( String strState, long lCreationTime )
+    {
+        FlowState flowState = new FlowState( );
+        flowState.setState( strState );
+        flowState.setNonce( "nonce" );
+        flowState.setHandlerName( "handler" );
+        flowState.setCreationTime( lCreationTime );
+        return flowState;
+    }
+
+    /**
+     * @return a request sending the cookies of the browser
+     */
+    HttpServletRequest request( )
+    {
+        return (HttpServletRequest) Proxy.newProxyInstance( BrowserMock.class.getClassLoader( ), new Class<?> [ ] {
+                HttpServletRequest.class
+        }, ( proxy, method, args ) -> {
+            switch( method.getName( ) )
+            {
+                case "getCookies":
+                    return _mapCookies.entrySet( ).stream( ).map( entry -> new Cookie( entry.getKey( ), entry.getValue( ) ) ).toArray( Cookie [ ]::new );
+                case "getSession":
+                    return ( args == null || (Boolean) args [0] || _session != null ) ? getSession( ) : null;
+                case "getContextPath":
+                    return "";
+                case "isSecure":
+                    return false;
+                default:
+                    return null;
+            }
+        } );
+    }
+
+    /**
+     * @return a response setting the cookies of the browser
+     */
+    HttpServletResponse response( )
+    {
+        return (HttpServletResponse) Proxy.newProxyInstance( BrowserMock.class.getClassLoader( ), new Class<?> [ ] {
+                HttpServletResponse.class
+        }, ( proxy, method, args ) -> {
+            if ( "addHeader".equals( method.getName( ) ) && "Set-Cookie".equals( args [0] ) )
+            {
+                setCookie( (String) args [1] );
+            }
+            return null;
+        } );
+    }
+
+    /**
+     * @param strName
+     *            the cookie name
+     * @return true if the browser has this cookie
+     */
+    boolean hasCookie( String strName )
+    {
+        return _mapCookies.containsKey( strName );
+    }
+
+    private HttpSession getSession( )
+    {
+        if ( _session == null )
+        {
+            _session = (HttpSession) Proxy.newProxyInstance( BrowserMock.class.getClassLoader( ), new Class<?> [ ] {
+                    HttpSession.class
+            }, ( proxy, method, args ) -> {
+                switch( method.getName( ) )
+                {
+                    case "getAttribute":
+                        return _mapSessionAttributes.get( args [0] );
+                    case "setAttribute":
+                        _mapSessionAttributes.put( (String) args [0], args [1] );
+                        return null;
+                    case "removeAttribute":
+                        _mapSessionAttributes.remove( args [0] );
+                        return null;
+                    case "hashCode":
+                        return System.identityHashCode( proxy );
+                    case "equals":
+                        return proxy == args [0];
+                    default:
+                        return null;
+                }
+            } );
+        }
+        return _session;
+    }
+
+    private void setCookie( String strHeader )
+    {
+        String [ ] attributes = strHeader.split( "; " );
+        String [ ] cookie = attributes [0].split( "=", 2 );
+        if ( cookie [1].isEmpty( ) || strHeader.contains( "Max-Age=0;" ) )
+        {
+            _mapCookies.remove( cookie [0] );
+        }
+        else
+        {
+            _mapCookies.put( cookie [0], cookie [1] );
+        }
+    }
+}
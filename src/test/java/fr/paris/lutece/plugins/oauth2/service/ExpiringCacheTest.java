@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.service;
+
+import static org.junit.Assert.*;
+
+import java.time.Instant;
+
+import org.junit.Test;
+
+/**
+ * ExpiringCache Test
+ */
+public class ExpiringCacheTest
+{
+    @Test
+    public void testGet( )
+    {
+        ExpiringCache<String, String> cache = new ExpiringCache<>( 10 );
+        cache.put( "key", "value", Instant.now( ).plusSeconds( 60 ) );
+
+        assertEquals( "value", cache.get( "key" ) );
+        assertNull( cache.get( "other" ) );
+        assertEquals( 1, cache.getHitCount( ) );
+        assertEquals( 1, cache.getMissCount( ) );
+        assertEquals( 0.5d, cache.getHitRatio( ), 0.001d );
+    }
+
+    @Test
+    public void testExpiredEntry( )
+    {
+        ExpiringCache<String, String> cache = new ExpiringCache<>( 10 );
+        cache.put( "key", "value", Instant.now( ).minusSeconds( 1 ) );
+
+        assertNull( cache.get( "key" ) );
+        assertEquals( 0, cache.size( ) );
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction( )
+    {
+        ExpiringCache<String, String> cache = new ExpiringCache<>( 2 );
+        Instant expiration = Instant.now( ).plusSeconds( 60 );
+        cache.put( "key1", "value1", expiration );
+        cache.put( "key2", "value2", expiration );
+        cache.get( "key1" );
+        cache.put( "key3", "value3", expiration );
+
+        assertEquals( "value1", cache.get( "key1" ) );
+        assertNull( cache.get( "key2" ) );
+        assertEquals( "value3", cache.get( "key3" ) );
+        assertEquals( 1, cache.getEvictionCount( ) );
+    }
+
+    @Test
+    public void testTake( )
+    {
+        ExpiringCache<String, String> cache = new ExpiringCache<>( 10 );
+        cache.put( "key", "value", Instant.now( ).plusSeconds( 60 ) );
+
+        assertEquals( "value", cache.take( "key" ) );
+        assertNull( cache.take( "key" ) );
+    }
+
+    @Test
+    public void testAmortizedCleanup( )
+    {
+        ExpiringCache<String, String> cache = new ExpiringCache<>( 100 );
+        Instant expired = Instant.now( ).minusSeconds( 1 );
+        for ( int i = 0; i < 100; i++ )
+        {
+            cache.put( "expired" + i, "value", expired );
+        }
+        Instant expiration = Instant.now( ).plusSeconds( 60 );
+        for ( int i = 0; i < 9; i++ )
+        {
+            cache.put( "key" + i, "value", expiration );
+        }
+
+        // the full cache is not scanned on each insertion : the least recently used entries are evicted
+        assertEquals( 0, cache.getCleanupCount( ) );
+        assertEquals( 9, cache.getEvictionCount( ) );
+        assertEquals( 100, cache.size( ) );
+
+        cache.put( "key9", "value", expiration );
+
+        // the tenth insertion scans the cache and removes all the expired entries
+        assertEquals( 1, cache.getCleanupCount( ) );
+        assertEquals( 9, cache.getEvictionCount( ) );
+        assertEquals( 10, cache.size( ) );
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.service;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import fr.paris.lutece.plugins.oauth2.business.FlowState;
+
+/**
+ * FlowStateCodec Test
+ */
+public class FlowStateCodecTest
+{
+    private static final byte [ ] SECRET = "secret".getBytes( StandardCharsets.UTF_8 );
+
+    @Test
+    public void testSealAndOpen( )
+    {
+        FlowStateCodec codec = new FlowStateCodec( SECRET, 600 );
+        FlowState flowState = createFlowState( System.currentTimeMillis( ) );
+
+        FlowState opened = codec.open( codec.seal( flowState ) );
+
+        assertNotNull( opened );
+        assertEquals( "state", opened.getState( ) );
+        assertEquals( "nonce", opened.getNonce( ) );
+        assertNull( opened.getCodeVerifier( ) );
+        assertEquals( "client", opened.getDataClientName( ) );
+        assertEquals( "handler", opened.getHandlerName( ) );
+        assertEquals( "binding", opened.getBinding( ) );
+        assertEquals( flowState.getCreationTime( ), opened.getCreationTime( ) );
+    }
+
+    @Test
+    public void testTamperedFlowState( )
+    {
+        FlowStateCodec codec = new FlowStateCodec( SECRET, 600 );
+        String strSealed = codec.seal( createFlowState( System.currentTimeMillis( ) ) );
+        char [ ] sealed = strSealed.toCharArray( );
+        sealed [sealed.length / 2] = ( sealed [sealed.length / 2] == 'A' ) ? 'B' : 'A';
+
+        assertNull( codec.open( new String( sealed ) ) );
+        assertNull( codec.open( "not a sealed flow state" ) );
+        assertNull( new FlowStateCodec( "other".getBytes( StandardCharsets.UTF_8 ), 600 ).open( strSealed ) );
+    }
+
+    @Test
+    public void testExpiredFlowState( )
+    {
+        FlowStateCodec codec = new FlowStateCodec( SECRET, 600 );
+
+        assertNull( codec.open( codec.seal( createFlowState( System.currentTimeMillis( ) - 601000L ) ) ) );
+    }
+
+    private static FlowState createFlowState( long lCreationTime )
+    {
+        FlowState flowState = new FlowState( );
+        flowState.setState( "state" );
+        flowState.setNonce( "nonce" );
+        flowState.setDataClientName( "client" );
+        flowState.setHandlerName( "handler" );
+        flowState.setBinding( "binding" );
+        flowState.setCreationTime( lCreationTime );
+        return flowState;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.service;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * InMemoryFlowStateStore Test
+ */
+public class InMemoryFlowStateStoreTest
+{
+    @Test
+    public void testTakeOnce( )
+    {
+        InMemoryFlowStateStore store = new InMemoryFlowStateStore( );
+        BrowserMock browser = new BrowserMock( );
+        String strState = store.put( browser.request( ), browser.response( ), BrowserMock.createFlowState( "state", System.currentTimeMillis( ) ) );
+
+        assertNotNull( store.take( browser.request( ), browser.response( ), "handler", strState ) );
+        assertNull( store.take( browser.request( ), browser.response( ), "handler", strState ) );
+    }
+
+    @Test
+    public void testStateMismatch( )
+    {
+        InMemoryFlowStateStore store = new InMemoryFlowStateStore( );
+        BrowserMock browser = new BrowserMock( );
+        String strState = store.put( browser.request( ), browser.response( ), BrowserMock.createFlowState( "state", System.currentTimeMillis( ) ) );
+
+        assertNull( store.take( browser.request( ), browser.response( ), "handler", "forged" ) );
+        // the pending flow is not cancelled by the forged callback
+        assertNotNull( store.take( browser.request( ), browser.response( ), "handler", strState ) );
+    }
+
+    @Test
+    public void testOtherBrowser( )
+    {
+        InMemoryFlowStateStore store = new InMemoryFlowStateStore( );
+        BrowserMock browser = new BrowserMock( );
+        String strState = store.put( browser.request( ), browser.response( ), BrowserMock.createFlowState( "state", System.currentTimeMillis( ) ) );
+        BrowserMock otherBrowser = new BrowserMock( );
+
+        assertNull( store.take( otherBrowser.request( ), otherBrowser.response( ), "handler", strState ) );
+        assertNotNull( store.take( browser.request( ), browser.response( ), "handler", strState ) );
+    }
+
+    @Test
+    public void testExpiredFlowState( )
+    {
+        InMemoryFlowStateStore store = new InMemoryFlowStateStore( );
+        store.setTtl( 0 );
+        BrowserMock browser = new BrowserMock( );
+        String strState = store.put( browser.request( ), browser.response( ), BrowserMock.createFlowState( "state", System.currentTimeMillis( ) ) );
+
+        assertNull( store.take( browser.request( ), browser.response( ), "handler", strState ) );
+    }
+}
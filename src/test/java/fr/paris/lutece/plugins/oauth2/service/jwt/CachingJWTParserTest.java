@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.service.jwt;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+import fr.paris.lutece.plugins.oauth2.business.AuthClientConf;
+import fr.paris.lutece.plugins.oauth2.business.AuthServerConf;
+import fr.paris.lutece.plugins.oauth2.business.IDToken;
+import fr.paris.lutece.plugins.oauth2.business.Token;
+import fr.paris.lutece.plugins.oauth2.jwt.CachingJWTParser;
+import fr.paris.lutece.plugins.oauth2.jwt.JWTParser;
+import fr.paris.lutece.plugins.oauth2.web.Constants;
+
+/**
+ * CachingJWTParser Test
+ */
+public class CachingJWTParserTest
+{
+    private static final String NONCE = "12344354597459";
+    private static final String SUBJECT = "YWxhY3JpdMOp";
+
+    @Test
+    public void testCachedIDTokensAreNotShared( ) throws Exception
+    {
+        int [ ] validations = new int [ 1];
+        JWTParser parser = new JWTParser( )
+        {
+            @Override
+            public void parseJWT( Token token, AuthClientConf clientConfig, AuthServerConf serverConfig, String strStoredNonce, Logger logger )
+            {
+                validations [0]++;
+                IDToken idToken = new IDToken( );
+                idToken.setSubject( SUBJECT );
+                idToken.setNonce( NONCE );
+                token.setIdToken( idToken );
+            }
+
+            @Override
+            public String parseJWT( String strJwt, AuthClientConf clientConfig, AuthServerConf serverConfig, Logger logger )
+            {
+                return null;
+            }
+        };
+        CachingJWTParser instance = new CachingJWTParser( parser );
+        Logger logger = Logger.getLogger( Constants.LOGGER_OAUTH2 );
+        String strJwt = buildUnsignedJWT( );
+
+        Token token1 = new Token( );
+        token1.setIdTokenString( strJwt );
+        instance.parseJWT( token1, null, null, NONCE, logger );
+        token1.getIdToken( ).setSubject( "modified" );
+
+        Token token2 = new Token( );
+        token2.setIdTokenString( strJwt );
+        instance.parseJWT( token2, null, null, NONCE, logger );
+
+        assertEquals( 1, validations [0] );
+        assertNotSame( token1.getIdToken( ), token2.getIdToken( ) );
+        assertEquals( SUBJECT, token2.getIdToken( ).getSubject( ) );
+    }
+
+    private static String buildUnsignedJWT( )
+    {
+        Base64.Encoder encoder = Base64.getUrlEncoder( ).withoutPadding( );
+        String strPayload = "{\"sub\":\"" + SUBJECT + "\",\"exp\":" + Instant.now( ).plusSeconds( 3600 ).getEpochSecond( ) + "}";
+        return encoder.encodeToString( "{\"alg\":\"none\"}".getBytes( StandardCharsets.UTF_8 ) ) + "."
+                + encoder.encodeToString( strPayload.getBytes( StandardCharsets.UTF_8 ) ) + ".";
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.service.jwt;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Set;
+
+import fr.paris.lutece.plugins.oauth2.business.AuthClientConf;
+import fr.paris.lutece.plugins.oauth2.business.AuthServerConf;
+import fr.paris.lutece.plugins.oauth2.service.CachingHttpAccessService;
+import fr.paris.lutece.plugins.oauth2.web.Constants;
+import fr.paris.lutece.portal.service.util.AppPathService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.util.httpaccess.HttpAccess;
+import fr.paris.lutece.util.httpaccess.PropertiesHttpClientConfiguration;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+
+/**
+ * Keys, JWKS and JWT used by the JWT validation tests
+ */
+public final class JwtTestUtils
+{
+    public static final String ISSUER = "https://idp.example.com";
+    public static final String JWKS_ENDPOINT_URI = "https://idp.example.com/jwks";
+    public static final String CLIENT_ID = "895fae591ccae777094931e269e46447";
+    public static final String SECRET = "7504f9f0ef08473a4c26873e9c1b898e567a39e6b76b7e60e93a0cb25cae5eb8";
+    public static final String SUBJECT = "YWxhY3JpdMOp";
+    public static final String NONCE = "12344354597459";
+    public static final String KEY_ID = "key1";
+
+    private JwtTestUtils( )
+    {
+    }
+
+    /**
+     * Fake initialization of Lutece, as needed by the HttpAccess
+     */
+    public static void initLutece( )
+    {
+        try
+        {
+            AppPathService.init( "" );
+            AppPropertiesService.init( "" );
+        }
+        catch( Exception e )
+        {
+            // ignore
+        }
+    }
+
+    /**
+     * Generate a RSA key pair
+     * 
+     * @return the key pair
+     * @throws NoSuchAlgorithmException
+     *             if RSA is not available
+     */
+    public static KeyPair generateRsaKeyPair( ) throws NoSuchAlgorithmException
+    {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance( "RSA" );
+        generator.initialize( 2048 );
+        return generator.generateKeyPair( );
+    }
+
+    /**
+     * Build a JWKS holding a RSA public key
+     * 
+     * @param key
+     *            the public key
+     * @return the JWKS
+     */
+    public static String buildJwks( RSAPublicKey key )
+    {
+        return "{\"keys\":[{\"kty\":\"RSA\",\"use\":\"sig\",\"alg\":\"RS256\",\"kid\":\"" + KEY_ID + "\",\"n\":\"" + encode( key.getModulus( ) )
+                + "\",\"e\":\"" + encode( key.getPublicExponent( ) ) + "\"}]}";
+    }
+
+    /**
+     * Create an HttpAccess which serves a JWKS
+     * 
+     * @param strJwks
+     *            the JWKS
+     * @return the HttpAccess
+     */
+    public static HttpAccess createHttpAccess( String strJwks )
+    {
+        return new HttpAccess( new CachingHttpAccessService( new PropertiesHttpClientConfiguration( ) ) )
+        {
+            @Override
+            public String doGet( String strUrl )
+            {
+                return strJwks;
+            }
+        };
+    }
+
+    /**
+     * Create a JWT builder with the claims of a valid ID token
+     * 
+     * @return the builder
+     */
+    public static JwtBuilder builder( )
+    {
+        long lNow = System.currentTimeMillis( );
+        return Jwts.builder( ).issuer( ISSUER ).audience( ).add( CLIENT_ID ).and( ).subject( SUBJECT ).claim( Constants.CLAIM_NONCE, NONCE )
+                .issuedAt( new Date( lNow ) ).expiration( new Date( lNow + 300000L ) );
+    }
+
+    /**
+     * Create the configuration of the server
+     * 
+     * @param strAlgorithmNames
+     *            the accepted signature algorithms
+     * @return the server configuration
+     */
+    public static AuthServerConf createServerConf( String... strAlgorithmNames )
+    {
+        AuthServerConf serverConfig = new AuthServerConf( );
+        serverConfig.setIssuer( ISSUER );
+        serverConfig.setJwksEndpointUri( JWKS_ENDPOINT_URI );
+        serverConfig.setIDTokenSignatureAlgorithmNames( Set.of( strAlgorithmNames ) );
+        return serverConfig;
+    }
+
+    /**
+     * Create the configuration of the client
+     * 
+     * @return the client configuration
+     */
+    public static AuthClientConf createClientConf( )
+    {
+        AuthClientConf clientConfig = new AuthClientConf( );
+        clientConfig.setClientId( CLIENT_ID );
+        clientConfig.setClientSecret( SECRET );
+        return clientConfig;
+    }
+
+    /**
+     * Replace the payload of a compact JWT, keeping its header and signature
+     * 
+     * @param strJwt
+     *            the compact JWT
+     * @param strPayload
+     *            the new payload
+     * @return the tampered JWT
+     */
+    public static String tamper( String strJwt, String strPayload )
+    {
+        String [ ] parts = strJwt.split( "\\." );
+        parts [1] = Base64.getUrlEncoder( ).withoutPadding( ).encodeToString( strPayload.getBytes( StandardCharsets.UTF_8 ) );
+        return String.join( ".", parts );
+    }
+
+    private static String encode( BigInteger value )
+    {
+        byte [ ] bytes = value.toByteArray( );
+        if ( bytes.length > 1 && bytes [0] == 0 )
+        {
+            bytes = Arrays.copyOfRange( bytes, 1, bytes.length );
+        }
+        return Base64.getUrlEncoder( ).withoutPadding( ).encodeToString( bytes );
+    }
+}
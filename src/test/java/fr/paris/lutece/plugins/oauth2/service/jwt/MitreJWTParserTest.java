@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.service.jwt;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.interfaces.RSAPublicKey;
+
+import org.apache.log4j.Logger;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import fr.paris.lutece.plugins.oauth2.business.Token;
+import fr.paris.lutece.plugins.oauth2.jwt.MitreJWTParser;
+import fr.paris.lutece.plugins.oauth2.jwt.TokenValidationException;
+import fr.paris.lutece.plugins.oauth2.web.Constants;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * Mitre JWTParser Test
+ */
+public class MitreJWTParserTest
+{
+    private static KeyPair _keyPair;
+    private static MitreJWTParser _parser;
+    private static Logger _logger = Logger.getLogger( Constants.LOGGER_OAUTH2 );
+
+    @BeforeClass
+    public static void init( ) throws Exception
+    {
+        JwtTestUtils.initLutece( );
+        _keyPair = JwtTestUtils.generateRsaKeyPair( );
+        _parser = new MitreJWTParser( JwtTestUtils.createHttpAccess( JwtTestUtils.buildJwks( (RSAPublicKey) _keyPair.getPublic( ) ) ) );
+    }
+
+    @Test
+    public void testParseJWTRS256( ) throws Exception
+    {
+        Token token = new Token( );
+        token.setIdTokenString(
+                JwtTestUtils.builder( ).header( ).keyId( JwtTestUtils.KEY_ID ).and( ).signWith( _keyPair.getPrivate( ), Jwts.SIG.RS256 ).compact( ) );
+
+        _parser.parseJWT( token, JwtTestUtils.createClientConf( ), JwtTestUtils.createServerConf( "RS256" ), JwtTestUtils.NONCE, _logger );
+
+        assertEquals( JwtTestUtils.SUBJECT, token.getIdToken( ).getSubject( ) );
+    }
+
+    @Test
+    public void testParseJWTTamperedPayload( ) throws Exception
+    {
+        String strJwt = JwtTestUtils.builder( ).header( ).keyId( JwtTestUtils.KEY_ID ).and( ).signWith( _keyPair.getPrivate( ), Jwts.SIG.RS256 )
+                .compact( );
+        String strPayload = "{\"iss\":\"" + JwtTestUtils.ISSUER + "\",\"aud\":\"" + JwtTestUtils.CLIENT_ID + "\",\"sub\":\"attacker\",\"nonce\":\""
+                + JwtTestUtils.NONCE + "\",\"iat\":" + ( System.currentTimeMillis( ) / 1000L ) + ",\"exp\":"
+                + ( System.currentTimeMillis( ) / 1000L + 300L ) + "}";
+
+        assertInvalid( JwtTestUtils.tamper( strJwt, strPayload ), "RS256" );
+    }
+
+    @Test
+    public void testParseJWTUnknownKeyId( ) throws Exception
+    {
+        assertInvalid( JwtTestUtils.builder( ).header( ).keyId( "unknown" ).and( ).signWith( _keyPair.getPrivate( ), Jwts.SIG.RS256 ).compact( ),
+                "RS256" );
+    }
+
+    @Test
+    public void testParseJWTHS256WrongSecret( ) throws Exception
+    {
+        String strOtherSecret = JwtTestUtils.SECRET + "OTHER";
+
+        assertInvalid( JwtTestUtils.builder( ).signWith( Keys.hmacShaKeyFor( strOtherSecret.getBytes( StandardCharsets.UTF_8 ) ), Jwts.SIG.HS256 )
+                .compact( ), "HS256" );
+    }
+
+    private static void assertInvalid( String strJwt, String strAlgorithmName )
+    {
+        Token token = new Token( );
+        token.setIdTokenString( strJwt );
+        try
+        {
+            _parser.parseJWT( token, JwtTestUtils.createClientConf( ), JwtTestUtils.createServerConf( strAlgorithmName ), JwtTestUtils.NONCE, _logger );
+        }
+        catch( TokenValidationException e )
+        {
+            // ok
+            return;
+        }
+        fail( "Validation should have failed" );
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2002-2025, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.oauth2.web;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import fr.paris.lutece.plugins.oauth2.jwt.JjwtJWTParser;
+import fr.paris.lutece.plugins.oauth2.service.jwt.JwtTestUtils;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * BearerTokenFilter Test
+ */
+public class BearerTokenFilterTest
+{
+    private static final String AUDIENCE = "lutece-api";
+    private static final String REALM = "lutece";
+
+    private static KeyPair _keyPair;
+    private static BearerTokenFilter _filter;
+
+    @BeforeClass
+    public static void init( ) throws Exception
+    {
+        JwtTestUtils.initLutece( );
+        _keyPair = JwtTestUtils.generateRsaKeyPair( );
+        JjwtJWTParser parser = new JjwtJWTParser( JwtTestUtils.createHttpAccess( JwtTestUtils.buildJwks( (RSAPublicKey) _keyPair.getPublic( ) ) ) );
+        _filter = new BearerTokenFilter( parser, JwtTestUtils.createServerConf( "RS256", "HS256" ), JwtTestUtils.createClientConf( ), AUDIENCE, REALM );
+    }
+
+    @Test
+    public void testValidAccessToken( ) throws Exception
+    {
+        Exchange exchange = filter( sign( accessToken( AUDIENCE ) ) );
+
+        assertTrue( exchange._bChainCalled );
+        assertEquals( JwtTestUtils.SUBJECT, ( (Map<?, ?>) exchange._mapAttributes.get( BearerTokenFilter.ATTRIBUTE_CLAIMS ) ).get( "sub" ) );
+    }
+
+    @Test
+    public void testWrongAudience( ) throws Exception
+    {
+        assertRejected( filter( sign( accessToken( "other-api" ) ) ) );
+    }
+
+    @Test
+    public void testIdToken( ) throws Exception
+    {
+        assertRejected( filter( sign( JwtTestUtils.builder( ) ) ) );
+    }
+
+    @Test
+    public void testHS256Token( ) throws Exception
+    {
+        String strJwt = accessToken( AUDIENCE ).header( ).keyId( JwtTestUtils.KEY_ID ).and( )
+                .signWith( Keys.hmacShaKeyFor( JwtTestUtils.SECRET.getBytes( StandardCharsets.UTF_8 ) ), Jwts.SIG.HS256 ).compact( );
+
+        assertRejected( filter( strJwt ) );
+    }
+
+    @Test
+    public void testExpiredToken( ) throws Exception
+    {
+        long lNow = System.currentTimeMillis( );
+
+        assertRejected( filter( sign( accessToken( AUDIENCE ).issuedAt( new Date( lNow - 900000L ) ).expiration( new Date( lNow - 600000L ) ) ) ) );
+    }
+
+    @Test
+    public void testMissingHeader( ) throws Exception
+    {
+        assertRejected( filter( null ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testMissingAudience( )
+    {
+        new BearerTokenFilter( null, JwtTestUtils.createServerConf( "RS256" ), JwtTestUtils.createClientConf( ), null, REALM );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testClientIdAudience( )
+    {
+        new BearerTokenFilter( null, JwtTestUtils.createServerConf( "RS256" ), JwtTestUtils.createClientConf( ), JwtTestUtils.CLIENT_ID, REALM );
+    }
+
+    private static JwtBuilder accessToken( String strAudience )
+    {
+        long lNow = System.currentTimeMillis( );
+        return Jwts.builder( ).issuer( JwtTestUtils.ISSUER ).audience( ).add( strAudience ).and( ).subject( JwtTestUtils.SUBJECT )
+                .issuedAt( new Date( lNow ) ).expiration( new Date( lNow + 300000L ) );
+    }
+
+    private static String sign( JwtBuilder builder )
+    {
+        return builder.header( ).keyId( JwtTestUtils.KEY_ID ).and( ).signWith( _keyPair.getPrivate( ), Jwts.SIG.RS256 ).compact( );
+    }
+
+    private static void assertRejected( Exchange exchange )
+    {
+        assertFalse( exchange._bChainCalled );
+        assertEquals( HttpServletResponse.SC_UNAUTHORIZED, exchange._nStatus );
+        assertNotNull( exchange._mapHeaders.get( "WWW-Authenticate" ) );
+        assertNull( exchange._mapAttributes.get( BearerTokenFilter.ATTRIBUTE_CLAIMS ) );
+    }
+
+    private static Exchange filter( String strJwt ) throws Exception
+    {
+        Exchange exchange = new Exchange( );
+        HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance( BearerTokenFilterTest.class.getClassLoader( ),
+                new Class<?> [ ] {
+                        HttpServletRequest.class
+                }, ( proxy, method, args ) -> {
+                    switch( method.getName( ) )
+                    {
+                        case "getHeader":
+                            return ( strJwt != null && "Authorization".equals( args [0] ) ) ? "Bearer " + strJwt : null;
+                        case "setAttribute":
+                            exchange._mapAttributes.put( (String) args [0], args [1] );
+                            return null;
+                        case "getAttribute":
+                            return exchange._mapAttributes.get( args [0] );
+                        default:
+                            return null;
+                    }
+                } );
+        HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance( BearerTokenFilterTest.class.getClassLoader( ),
+                new Class<?> [ ] {
+                        HttpServletResponse.class
+                }, ( proxy, method, args ) -> {
+                    switch( method.getName( ) )
+                    {
+                        case "setHeader":
+                            exchange._mapHeaders.put( (String) args [0], (String) args [1] );
+                            return null;
+                        case "sendError":
+                            exchange._nStatus = (Integer) args [0];
+                            return null;
+                        default:
+                            return null;
+                    }
+                } );
+        FilterChain chain = ( req, resp ) -> exchange._bChainCalled = true;
+
+        _filter.doFilter( request, response, chain );
+        return exchange;
+    }
+
+    /**
+     * Outcome of a filtered request
+     */
+    private static final class Exchange
+    {
+        private final Map<String, Object> _mapAttributes = new HashMap<>( );
+        private final Map<String, String> _mapHeaders = new HashMap<>( );
+        private int _nStatus = HttpServletResponse.SC_OK;
+        private boolean _bChainCalled;
+    }
+}